@@ -0,0 +1,93 @@
+package bench;
+
+import logic.ArchiveEntry;
+import logic.ExtractionResult;
+import logic.Huffman;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end archive operations on disk: one large file versus many small ones, so per-entry
+ * overhead shows up next to raw coding speed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class ArchiveBenchmark {
+
+    @Param({"LOGS", "BINARY"})
+    public Corpus.Kind kind;
+
+    @Param({"1x33554432", "2048x16384"})
+    public String layout;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"0", "1", "6"})
+    public int level;
+
+    private Path dir;
+    private List<File> files;
+    private long totalBytes;
+    private File archive;
+    private Huffman huffman;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String[] parts = layout.split("x");
+        int count = Integer.parseInt(parts[0]);
+        int size = Integer.parseInt(parts[1]);
+        dir = Files.createTempDirectory("archive-bench");
+        files = Corpus.writeFiles(dir.resolve("in"), kind, count, size);
+        totalBytes = (long) count * size;
+
+        huffman = new Huffman();
+        huffman.setParallelism(threads);
+        huffman.setLevel(level);
+        archive = dir.resolve("corpus.iak").toFile();
+        huffman.compress(files, archive, null);
+        Files.createDirectories(dir.resolve("out"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.delete(p);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public int compress(Bytes bytes) throws IOException {
+        int ratio = huffman.compress(files, dir.resolve("compress.iak").toFile(), null);
+        bytes.bytes += totalBytes;
+        return ratio;
+    }
+
+    @Benchmark
+    public ExtractionResult extract(Bytes bytes) {
+        ExtractionResult result = huffman.extract(archive, dir.resolve("out") + File.separator, null, null).join();
+        bytes.bytes += totalBytes;
+        return result;
+    }
+
+    @Benchmark
+    public List<ArchiveEntry> list() throws IOException {
+        return huffman.listEntries(archive);
+    }
+}
@@ -0,0 +1,90 @@
+package bench;
+
+import logic.BitWriter;
+import logic.ByteHistogram;
+import logic.CanonicalCode;
+import logic.DecodeTable;
+import logic.Huffman;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded entropy coding throughput for one block, without any file I/O.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    @Param({"TEXT", "LOGS", "SKEWED", "BINARY", "RANDOM"})
+    public Corpus.Kind kind;
+
+    @Param({"1048576"})
+    public int blockSize;
+
+    private byte[] block;
+    private int[] codes;
+    private int[] lengths;
+    private DecodeTable table;
+    private ByteBuffer encoded;
+    private long encodedBits;
+    private ByteBuffer[] streams;
+    private byte[] decoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        block = Corpus.generate(kind, blockSize, 42);
+        ByteHistogram histogram = new ByteHistogram();
+        histogram.add(block, 0, block.length);
+        lengths = Huffman.buildCodeLengths(histogram.counts(), CanonicalCode.DEFAULT_MAX_CODE_LENGTH);
+        codes = CanonicalCode.codes(lengths);
+        table = DecodeTable.fromCodeLengths(lengths);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BitWriter writer = new BitWriter(out);
+        for (byte b : block) writer.write(codes[b & 0xFF], lengths[b & 0xFF]);
+        int padBits = writer.finish();
+        encoded = ByteBuffer.wrap(out.toByteArray());
+        encodedBits = encoded.capacity() * 8L - padBits;
+        decoded = new byte[blockSize];
+
+        streams = new ByteBuffer[4];
+        int quarter = DecodeTable.quarter(block.length);
+        for (int k = 0; k < streams.length; k++) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            BitWriter streamWriter = new BitWriter(stream);
+            for (int i = k * quarter, end = Math.min(i + quarter, block.length); i < end; i++)
+                streamWriter.write(codes[block[i] & 0xFF], lengths[block[i] & 0xFF]);
+            streamWriter.finish();
+            streams[k] = ByteBuffer.wrap(stream.toByteArray());
+        }
+    }
+
+    @Benchmark
+    public long encode(Bytes bytes) throws IOException {
+        BitWriter writer = new BitWriter(OutputStream.nullOutputStream());
+        for (byte b : block) writer.write(codes[b & 0xFF], lengths[b & 0xFF]);
+        writer.finish();
+        bytes.bytes += block.length;
+        return writer.getBytesWritten();
+    }
+
+    @Benchmark
+    public int decode(Bytes bytes) throws IOException {
+        int n = table.decode(encoded.duplicate(), encodedBits, decoded, 0, decoded.length);
+        bytes.bytes += n;
+        return n;
+    }
+
+    @Benchmark
+    public byte[] decodeInterleaved(Bytes bytes) throws IOException {
+        table.decodeInterleaved(streams, decoded);
+        bytes.bytes += decoded.length;
+        return decoded;
+    }
+}
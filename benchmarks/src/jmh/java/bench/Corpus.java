@@ -0,0 +1,152 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic benchmark inputs. The same kind, size and seed always produce the same bytes, so
+ * results can be compared between versions without shipping test data.
+ * <p>
+ * {@code main} writes a corpus to disk for the command-line tool:
+ * {@code java bench.Corpus <dir> [largeFileMB] [smallFiles] [smallFileKB]}.
+ */
+public final class Corpus {
+
+    public enum Kind {
+        TEXT, LOGS, RANDOM, SKEWED, BINARY
+    }
+
+    private static final String[] WORDS = ("the of and to a in is it you that he was for on are with as his they be at one "
+            + "have this from or had by hot word but what some we can out other were all there when up use your how said "
+            + "an each she which do their time if will way about many then them write would like so these her long make "
+            + "thing see him two has look more day could go come did number sound no most people my over know water than "
+            + "call first who may down side been now find any new work part take get place made live where after back "
+            + "little only round man year came show every good me give our under name very through just form sentence "
+            + "great think say help low line differ turn cause much mean before move right boy old too same tell does set "
+            + "three want air well also play small end put home read hand port large spell add even land here must big").split(" ");
+
+    private static final String[] LEVELS = {"INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+
+    private Corpus() {
+    }
+
+    public static byte[] generate(Kind kind, int size, long seed) {
+        Random random = new Random(seed);
+        return switch (kind) {
+            case TEXT -> text(random, size);
+            case LOGS -> logs(random, size);
+            case RANDOM -> {
+                byte[] data = new byte[size];
+                random.nextBytes(data);
+                yield data;
+            }
+            case SKEWED -> skewed(random, size);
+            case BINARY -> binary(random, size);
+        };
+    }
+
+    // Zipf-like word choice: low indexes are far more frequent
+    private static byte[] text(Random random, int size) {
+        StringBuilder sb = new StringBuilder(size + 64);
+        int wordsInSentence = 0;
+        while (sb.length() < size) {
+            String word = WORDS[(int) (WORDS.length * Math.pow(random.nextDouble(), 3))];
+            if (wordsInSentence == 0) word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+            sb.append(word);
+            if (++wordsInSentence > 6 + random.nextInt(12)) {
+                sb.append(random.nextInt(8) == 0 ? ".\n" : ". ");
+                wordsInSentence = 0;
+            } else {
+                sb.append(' ');
+            }
+        }
+        return truncate(sb, size);
+    }
+
+    private static byte[] logs(Random random, int size) {
+        StringBuilder sb = new StringBuilder(size + 256);
+        long millis = 1_700_000_000_000L;
+        int request = 0;
+        while (sb.length() < size) {
+            millis += random.nextInt(50);
+            String level = LEVELS[random.nextInt(LEVELS.length)];
+            sb.append(String.format("2026-10-18T%02d:%02d:%02d.%03dZ %-5s [worker-%d] request=%d path=/api/v1/%s status=%d latency=%dms%n",
+                    (millis / 3_600_000) % 24, (millis / 60_000) % 60, (millis / 1000) % 60, millis % 1000, level,
+                    random.nextInt(16), request++, WORDS[random.nextInt(32)],
+                    level.equals("ERROR") ? 500 : 200, 1 + random.nextInt(random.nextInt(1000) + 1)));
+        }
+        return truncate(sb, size);
+    }
+
+    // geometric distribution over byte values: a few symbols dominate
+    private static byte[] skewed(Random random, int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            int symbol = 0;
+            while (symbol < 255 && random.nextInt(4) == 0) symbol++;
+            data[i] = (byte) (symbol * 7);
+        }
+        return data;
+    }
+
+    // little-endian records of small counters, ids and floats, like typical binary formats
+    private static byte[] binary(Random random, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(size + 32).order(ByteOrder.LITTLE_ENDIAN);
+        int id = 0;
+        while (buffer.position() < size) {
+            buffer.putInt(id++);
+            buffer.putShort((short) random.nextInt(64));
+            buffer.putShort((short) 0);
+            buffer.putFloat((float) random.nextGaussian());
+            buffer.putLong(1_700_000_000_000L + id * 1000L);
+            buffer.putInt(random.nextInt(8) == 0 ? random.nextInt() : 0);
+        }
+        byte[] data = new byte[size];
+        buffer.flip().get(data);
+        return data;
+    }
+
+    private static byte[] truncate(StringBuilder sb, int size) {
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.US_ASCII);
+        byte[] data = new byte[size];
+        System.arraycopy(bytes, 0, data, 0, size);
+        return data;
+    }
+
+    /**
+     * Writes {@code count} files of {@code size} bytes each; file {@code i} uses seed {@code i}.
+     */
+    public static List<File> writeFiles(Path dir, Kind kind, int count, int size) throws IOException {
+        Files.createDirectories(dir);
+        List<File> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Path file = dir.resolve(kind.name().toLowerCase() + "-" + i + ".dat");
+            Files.write(file, generate(kind, size, i));
+            files.add(file.toFile());
+        }
+        return files;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: Corpus <dir> [largeFileMB] [smallFiles] [smallFileKB]");
+            System.exit(2);
+        }
+        Path dir = Path.of(args[0]);
+        int largeMb = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int smallFiles = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int smallKb = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        for (Kind kind : Kind.values()) {
+            writeFiles(dir.resolve("large").resolve(kind.name().toLowerCase()), kind, 1, largeMb << 20);
+            writeFiles(dir.resolve("small").resolve(kind.name().toLowerCase()), kind, smallFiles, smallKb << 10);
+        }
+    }
+}
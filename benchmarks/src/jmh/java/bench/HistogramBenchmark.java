@@ -0,0 +1,65 @@
+package bench;
+
+import logic.ByteHistogram;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frequency counting, in memory and over files with the fork/join counter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class HistogramBenchmark {
+
+    @Param({"TEXT", "RANDOM"})
+    public Corpus.Kind kind;
+
+    @Param({"16777216"})
+    public int size;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private byte[] data;
+    private Path dir;
+    private List<File> files;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        data = Corpus.generate(kind, size, 42);
+        dir = Files.createTempDirectory("histogram-bench");
+        files = Corpus.writeFiles(dir, kind, 4, size / 4);
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        for (File file : files) Files.deleteIfExists(file.toPath());
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public long[] addArray(Bytes bytes) {
+        ByteHistogram histogram = new ByteHistogram();
+        histogram.add(data, 0, data.length);
+        bytes.bytes += data.length;
+        return histogram.counts();
+    }
+
+    @Benchmark
+    public long[] countFiles(Bytes bytes) {
+        long[] counts = ByteHistogram.count(files, pool).counts();
+        bytes.bytes += size;
+        return counts;
+    }
+}
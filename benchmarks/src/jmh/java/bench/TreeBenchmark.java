@@ -0,0 +1,52 @@
+package bench;
+
+import logic.ByteHistogram;
+import logic.CanonicalCode;
+import logic.DecodeTable;
+import logic.Huffman;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-table setup cost: code lengths from a histogram, canonical codes and the decode table.
+ * These run once per archive today, but once per block when tables are chosen per block.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class TreeBenchmark {
+
+    @Param({"TEXT", "SKEWED", "RANDOM"})
+    public Corpus.Kind kind;
+
+    @Param({"11", "15"})
+    public int maxCodeLength;
+
+    private long[] frequencies;
+    private int[] lengths;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        byte[] data = Corpus.generate(kind, 1 << 20, 42);
+        ByteHistogram histogram = new ByteHistogram();
+        histogram.add(data, 0, data.length);
+        frequencies = histogram.counts();
+        lengths = Huffman.buildCodeLengths(frequencies, maxCodeLength);
+    }
+
+    @Benchmark
+    public int[] codeLengths() {
+        return Huffman.buildCodeLengths(frequencies, maxCodeLength);
+    }
+
+    @Benchmark
+    public int[] canonicalCodes() {
+        return CanonicalCode.codes(lengths);
+    }
+
+    @Benchmark
+    public DecodeTable decodeTable() {
+        return DecodeTable.fromCodeLengths(lengths);
+    }
+}
@@ -0,0 +1,251 @@
+package CLI;
+
+import logic.ArchiveEntry;
+import logic.CompressionMetrics;
+import logic.ExtractionResult;
+import logic.Huffman;
+import logic.TableScope;
+import logic.WrongPasswordException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Headless front end. Results are printed to stdout as {@code key=value} pairs so scripts can parse
+ * them; errors go to stderr.
+ */
+public class CompressCLI {
+
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_FAILURE = 1;
+    public static final int EXIT_USAGE = 2;
+
+    private static final Set<String> COMMANDS = Set.of("compress", "extract", "list", "test");
+
+    private static final String USAGE = """
+            usage:
+              compress [-q] [-t threads] [-b blockSize] [-l level] [-w window] [--tables scope] [--single-stream] [--solid] [--no-dedup] [--index interval] [--name entry] [-p password] -o archive.iak file...
+              extract  [-q] [-t threads] [-p password] [--virtual-threads] [-o outputDir] archive.iak [entry...]
+              list     archive.iak
+              test     [-q] [-t threads] [-p password] archive.iak
+            level 0 is Huffman only, 1-9 add LZ77 with a window of up to 1m (default 64k)
+            scope is archive, entry, block or auto (default): which Huffman tables blocks may use
+            interval is how much data lies between seek checkpoints (default 1m, 0 for none)
+            --solid packs files of up to 64k into shared blocks; --no-dedup stores every copy of identical files
+            blockSize, window and interval accept k and m suffixes, e.g. 256k or 4m
+            file - compresses stdin in one pass as an entry named by --name (default stdin); -o - writes to stdout
+            -q hides the progress bar, which is only drawn when stderr is a terminal""";
+
+    private final Huffman huffman = new Huffman();
+    private String password;
+    private String output;
+    private String entryName = "stdin";
+    private boolean quiet;
+    private final List<String> operands = new ArrayList<>();
+    private ProgressBar progressBar;
+
+    public static boolean isCommand(String arg) {
+        return COMMANDS.contains(arg);
+    }
+
+    public static int run(String[] args) {
+        CompressCLI cli = new CompressCLI();
+        try {
+            cli.parse(Arrays.copyOfRange(args, 1, args.length));
+            cli.progressBar = new ProgressBar(System.err, !cli.quiet && System.console() != null);
+            cli.huffman.setListener(cli.progressBar);
+        } catch (IllegalArgumentException e) {
+            System.err.println("error: " + e.getMessage());
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        try {
+            return switch (args[0]) {
+                case "compress" -> cli.compress();
+                case "extract" -> cli.extract();
+                case "list" -> cli.list();
+                case "test" -> cli.test();
+                default -> EXIT_USAGE;
+            };
+        } catch (WrongPasswordException e) {
+            System.err.println("error: " + e.getMessage());
+            return EXIT_FAILURE;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("error: " + e);
+            return EXIT_FAILURE;
+        }
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-t", "--threads" -> huffman.setParallelism(Integer.parseInt(value(args, ++i, arg)));
+                case "-b", "--block-size" -> huffman.setBlockSize(parseSize(value(args, ++i, arg)));
+                case "-l", "--level" -> huffman.setLevel(Integer.parseInt(value(args, ++i, arg)));
+                case "-w", "--window" -> huffman.setWindowSize(parseSize(value(args, ++i, arg)));
+                case "--tables" -> huffman.setTableScope(TableScope.valueOf(value(args, ++i, arg).toUpperCase(Locale.ROOT)));
+                case "-p", "--password" -> password = value(args, ++i, arg);
+                case "-o", "--output" -> output = value(args, ++i, arg);
+                case "--name" -> entryName = value(args, ++i, arg);
+                case "--single-stream" -> huffman.setInterleaved(false);
+                case "--solid" -> huffman.setSolid(true);
+                case "--no-dedup" -> huffman.setDeduplicate(false);
+                case "--index" -> huffman.setIndexInterval(parseSize(value(args, ++i, arg)));
+                case "--virtual-threads" -> huffman.setVirtualThreads(true);
+                case "-q", "--quiet" -> quiet = true;
+                default -> {
+                    if (arg.startsWith("-") && arg.length() > 1)
+                        throw new IllegalArgumentException("unknown option " + arg);
+                    operands.add(arg);
+                }
+            }
+        }
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length)
+            throw new IllegalArgumentException(option + " needs a value");
+        return args[i];
+    }
+
+    static int parseSize(String value) {
+        String v = value.toLowerCase(Locale.ROOT);
+        int shift = v.endsWith("k") ? 10 : v.endsWith("m") ? 20 : 0;
+        if (shift > 0) v = v.substring(0, v.length() - 1);
+        return Math.multiplyExact(Integer.parseInt(v), 1 << shift);
+    }
+
+    private int compress() throws IOException {
+        if (output == null || operands.isEmpty())
+            throw new IllegalArgumentException("compress needs -o archive and at least one file");
+        if (operands.contains("-")) {
+            if (operands.size() != 1)
+                throw new IllegalArgumentException("- (stdin) cannot be combined with other files");
+            return compressStream();
+        }
+        if (output.equals("-"))
+            throw new IllegalArgumentException("-o - needs - (stdin) as input");
+        List<File> files = new ArrayList<>();
+        long inputBytes = 0;
+        for (String operand : operands) {
+            File file = new File(operand);
+            if (!file.isFile())
+                throw new IOException(operand + " is not a file");
+            files.add(file);
+            inputBytes += file.length();
+        }
+        File archive = new File(output);
+
+        long start = System.nanoTime();
+        huffman.compress(files, archive, password);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long outputBytes = archive.length();
+        System.out.printf(Locale.ROOT, "command=compress files=%d input_bytes=%d output_bytes=%d ratio=%.4f seconds=%.3f throughput_mb_s=%.1f%s%n",
+                files.size(), inputBytes, outputBytes, inputBytes == 0 ? 0 : (double) outputBytes / inputBytes,
+                seconds, inputBytes / 1e6 / seconds, phaseTimings());
+        return EXIT_OK;
+    }
+
+    // single pass from stdin; with -o - the archive goes to stdout and the summary to stderr
+    private int compressStream() throws IOException {
+        boolean toStdout = output.equals("-");
+        long start = System.nanoTime();
+        long outputBytes;
+        if (toStdout) {
+            outputBytes = huffman.compress(System.in, System.out, entryName, password);
+            System.out.flush();
+        } else {
+            try (OutputStream out = new FileOutputStream(output)) {
+                outputBytes = huffman.compress(System.in, out, entryName, password);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long inputBytes = progressBar.getLastMetrics().getBytesIn();
+        PrintStream summary = toStdout ? System.err : System.out;
+        summary.printf(Locale.ROOT, "command=compress files=1 input_bytes=%d output_bytes=%d ratio=%.4f seconds=%.3f throughput_mb_s=%.1f%s%n",
+                inputBytes, outputBytes, inputBytes == 0 ? 0 : (double) outputBytes / inputBytes,
+                seconds, inputBytes / 1e6 / seconds, phaseTimings());
+        return EXIT_OK;
+    }
+
+    private int extract() throws IOException {
+        if (operands.isEmpty())
+            throw new IllegalArgumentException("extract needs an archive");
+        File archive = new File(operands.get(0));
+        Path outputDir = Path.of(output == null ? "." : output);
+        Files.createDirectories(outputDir);
+        List<String> names = operands.size() > 1 ? operands.subList(1, operands.size()) : null;
+
+        ExtractionResult result = join(huffman.extract(archive, outputDir.toAbsolutePath() + File.separator, password, names));
+        for (ExtractionResult.EntryResult failure : result.failures()) {
+            System.err.println("error: " + failure.name() + ": " + failure.error().getMessage());
+        }
+        double seconds = result.elapsed().toNanos() / 1e9;
+        System.out.printf(Locale.ROOT, "command=extract files=%d failed=%d input_bytes=%d output_bytes=%d seconds=%.3f throughput_mb_s=%.1f%s%n",
+                result.entries().size(), result.failures().size(), archive.length(), result.totalBytes(),
+                seconds, result.totalBytes() / 1e6 / seconds, phaseTimings());
+        return result.isSuccessful() ? EXIT_OK : EXIT_FAILURE;
+    }
+
+    private int list() throws IOException {
+        if (operands.size() != 1)
+            throw new IllegalArgumentException("list needs exactly one archive");
+        List<ArchiveEntry> entries = huffman.listEntries(new File(operands.get(0)));
+        for (ArchiveEntry entry : entries) {
+            System.out.printf(Locale.ROOT, "name=%s size=%d compressed_size=%d offset=%d crc32c=%08x checkpoints=%d solid_offset=%d%n",
+                    entry.name(), entry.size(), entry.compressedSize(), entry.offset(), entry.checksum(),
+                    entry.index().size(), entry.solidOffset());
+        }
+        System.out.println("command=list files=" + entries.size());
+        return EXIT_OK;
+    }
+
+    // decodes every entry without writing it and checks the block and entry checksums
+    private int test() throws IOException {
+        if (operands.size() != 1)
+            throw new IllegalArgumentException("test needs exactly one archive");
+        ExtractionResult result = join(huffman.verify(new File(operands.get(0)), password, null));
+        for (ExtractionResult.EntryResult failure : result.failures()) {
+            System.err.println("error: " + failure.name() + ": " + failure.error().getMessage());
+        }
+        double seconds = result.elapsed().toNanos() / 1e9;
+        System.out.printf(Locale.ROOT, "command=test files=%d failed=%d output_bytes=%d seconds=%.3f throughput_mb_s=%.1f%s%n",
+                result.entries().size(), result.failures().size(), result.totalBytes(), seconds,
+                result.totalBytes() / 1e6 / seconds, phaseTimings());
+        return result.isSuccessful() ? EXIT_OK : EXIT_FAILURE;
+    }
+
+    // summed worker time per phase, e.g. " encode_ms=812 write_ms=40"
+    private String phaseTimings() {
+        CompressionMetrics metrics = progressBar.getLastMetrics();
+        if (metrics == null) return "";
+        StringBuilder sb = new StringBuilder();
+        metrics.toMap().forEach((key, value) -> {
+            if (key.endsWith("_ms") && !key.equals("elapsed_ms"))
+                sb.append(' ').append(key).append('=').append(value);
+        });
+        return sb.toString();
+    }
+
+    private static ExtractionResult join(CompletableFuture<ExtractionResult> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package CLI;
+
+import logic.CompressionListener;
+import logic.CompressionMetrics;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Text progress bar redrawn in place on a terminal. It also keeps the metrics of the last finished
+ * operation so their timings can be printed with the results.
+ */
+class ProgressBar implements CompressionListener {
+
+    private static final int WIDTH = 30;
+
+    private final PrintStream out;
+    private final boolean visible;
+    private CompressionMetrics lastMetrics;
+
+    ProgressBar(PrintStream out, boolean visible) {
+        this.out = out;
+        this.visible = visible;
+    }
+
+    @Override
+    public void progress(CompressionMetrics metrics) {
+        if (visible) draw(metrics);
+    }
+
+    @Override
+    public void finished(CompressionMetrics metrics) {
+        lastMetrics = metrics;
+        if (!visible) return;
+        draw(metrics);
+        out.println();
+    }
+
+    CompressionMetrics getLastMetrics() {
+        return lastMetrics;
+    }
+
+    private void draw(CompressionMetrics metrics) {
+        double fraction = Math.max(0, metrics.getFraction());
+        int filled = (int) (fraction * WIDTH);
+        StringBuilder line = new StringBuilder("\r[");
+        line.append("#".repeat(filled)).append(" ".repeat(WIDTH - filled)).append(']');
+        line.append(String.format(Locale.ROOT, " %3d%% %7.1f MB/s", (int) (fraction * 100), metrics.getThroughput() / 1e6));
+        Duration eta = metrics.isFinished() ? Duration.ZERO : metrics.getEta();
+        if (eta != null)
+            line.append(String.format(Locale.ROOT, " ETA %d:%02d", eta.toMinutes(), eta.toSecondsPart()));
+        // pad so a shorter line fully overwrites the previous one
+        line.append("   ");
+        out.print(line);
+        out.flush();
+    }
+}
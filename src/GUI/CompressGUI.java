@@ -1,6 +1,9 @@
 package GUI;
 
+import logic.ExtractionResult;
 import logic.Huffman;
+import logic.Lz77;
+import logic.WrongPasswordException;
 
 
 import javax.swing.*;
@@ -9,6 +12,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletionException;
 
 public class CompressGUI extends JFrame {
 
@@ -126,6 +130,22 @@ public class CompressGUI extends JFrame {
         passwordPanel.add(passwordLabel);
         passwordPanel.add(passwordField);
         panel.add(passwordPanel);
+        panel.add(Box.createRigidArea(new Dimension(0, 5)));
+
+        JPanel threadsPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        JLabel threadsLabel = new JLabel("Threads:");
+        JSpinner threadsSpinner = new JSpinner(new SpinnerNumberModel(huffman.getParallelism(), 1, 256, 1));
+        threadsPanel.add(threadsLabel);
+        threadsPanel.add(threadsSpinner);
+        panel.add(threadsPanel);
+        panel.add(Box.createRigidArea(new Dimension(0, 5)));
+
+        JPanel levelPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        JLabel levelLabel = new JLabel("Level (0 = fastest):");
+        JSpinner levelSpinner = new JSpinner(new SpinnerNumberModel(huffman.getLevel(), 0, Lz77.MAX_LEVEL, 1));
+        levelPanel.add(levelLabel);
+        levelPanel.add(levelSpinner);
+        panel.add(levelPanel);
         panel.add(Box.createRigidArea(new Dimension(0, 15)));
 
         JButton compressButton = new JButton("Compress");
@@ -133,6 +153,8 @@ public class CompressGUI extends JFrame {
         compressButton.addActionListener(e -> {
             String pw = passwordField.getText();
             final String finalPassword = pw.isEmpty() ? null : pw;
+            huffman.setParallelism((Integer) threadsSpinner.getValue());
+            huffman.setLevel((Integer) levelSpinner.getValue());
 
             JFileChooser fileChooser = new JFileChooser();
             fileChooser.setDialogTitle("Save Compressed File As");
@@ -149,13 +171,8 @@ public class CompressGUI extends JFrame {
             }
             final File finalCompressedFile = selected;
 
-            // Progress dialog
-            JDialog progressDialog = new JDialog(this, "Compressing...", true);
-            JLabel progressLabel = new JLabel("Compressing, please wait...");
-            progressLabel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
-            progressDialog.add(progressLabel);
-            progressDialog.pack();
-            progressDialog.setLocationRelativeTo(this);
+            ProgressDialog progressDialog = new ProgressDialog(this, "Compressing...");
+            huffman.setListener(progressDialog);
 
             SwingWorker<Integer, Void> worker = new SwingWorker<>() {
                 @Override
@@ -257,7 +274,7 @@ public class CompressGUI extends JFrame {
         panel.add(Box.createRigidArea(new Dimension(0, 10)));
 
         try {
-            Map<String, Integer> files = huffman.getAllCompressedFiles(compressedFile);
+            Map<String, Long> files = huffman.getAllCompressedFiles(compressedFile);
             for (String fileName : files.keySet()) {
                 fileListModel.addElement(fileName);
             }
@@ -289,36 +306,13 @@ public class CompressGUI extends JFrame {
             File outputDir = dirChooser.getSelectedFile();
             String outputPath = outputDir.getAbsolutePath() + File.separator;
 
-            try {
-                Map<String, Integer> files = huffman.getAllCompressedFiles(compressedFile);
-                List<String> selected = fileList.getSelectedValuesList();
-                if (selected.isEmpty()) {
-                    JOptionPane.showMessageDialog(this, "Please select at least one file to decode.");
-                    return;
-                }
-
-                boolean allSuccess = true;
-                for (String name : selected) {
-                    int start = files.get(name);
-                    boolean success = huffman.decodeFile(compressedFile, start, outputPath, password);
-                    if (!success) {
-                        allSuccess = false;
-                        break;
-                    }
-                }
-
-                if (allSuccess) {
-                    JOptionPane.showMessageDialog(this, "Selected files are being decoded, please wait", null, JOptionPane.INFORMATION_MESSAGE);
-                } else {
-                    JOptionPane.showMessageDialog(this,
-                            "Decoding failed: Wrong password or corrupted archive.",
-                            "Error",
-                            JOptionPane.ERROR_MESSAGE);
-                }
-
-            } catch (IOException ex) {
-                JOptionPane.showMessageDialog(this, "Error decoding: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            List<String> selected = fileList.getSelectedValuesList();
+            if (selected.isEmpty()) {
+                JOptionPane.showMessageDialog(this, "Please select at least one file to decode.");
+                return;
             }
+
+            extract(huffman, compressedFile, outputPath, password, selected);
         });
 
         JButton decodeAllButton = new JButton("Decode All");
@@ -336,19 +330,7 @@ public class CompressGUI extends JFrame {
             File outputDir = dirChooser.getSelectedFile();
             String outputPath = outputDir.getAbsolutePath() + File.separator;
 
-            try {
-                boolean success = huffman.decodeAll(compressedFile, outputPath, password);
-                if (success) {
-                    JOptionPane.showMessageDialog(this, "All files are being decoded, please wait", null, JOptionPane.INFORMATION_MESSAGE);
-                } else {
-                    JOptionPane.showMessageDialog(this,
-                            "Decoding failed: Wrong password or corrupted archive.",
-                            "Error",
-                            JOptionPane.ERROR_MESSAGE);
-                }
-            } catch (IOException ex) {
-                JOptionPane.showMessageDialog(this, "Error decoding: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            extract(huffman, compressedFile, outputPath, password, null);
         });
 
         panel.add(decodeSelectedButton);
@@ -360,4 +342,31 @@ public class CompressGUI extends JFrame {
         this.repaint();
     }
 
-}
+    private void extract(Huffman huffman, File compressedFile, String outputPath, String password, List<String> names) {
+        ProgressDialog progressDialog = new ProgressDialog(this, "Decompressing...");
+        huffman.setListener(progressDialog);
+        huffman.extract(compressedFile, outputPath, password, names)
+                .whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+                    progressDialog.dispose();
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                        String message = cause instanceof WrongPasswordException
+                                ? "Decoding failed: Wrong password or corrupted archive."
+                                : "Error decoding: " + cause.getMessage();
+                        JOptionPane.showMessageDialog(this, message, "Error", JOptionPane.ERROR_MESSAGE);
+                    } else if (result.isSuccessful()) {
+                        JOptionPane.showMessageDialog(this,
+                                result.entries().size() + " file(s) decoded successfully in "
+                                        + result.elapsed().toMillis() + " ms.");
+                    } else {
+                        StringBuilder message = new StringBuilder("Decoding failed for:\n");
+                        for (ExtractionResult.EntryResult failure : result.failures()) {
+                            message.append(failure.name()).append(": ").append(failure.error().getMessage()).append("\n");
+                        }
+                        JOptionPane.showMessageDialog(this, message.toString(), "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                }));
+        progressDialog.setVisible(true);
+    }
+
+}
\ No newline at end of file
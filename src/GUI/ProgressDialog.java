@@ -0,0 +1,81 @@
+package GUI;
+
+import logic.CompressionListener;
+import logic.CompressionMetrics;
+import logic.Phase;
+
+import javax.swing.*;
+import java.awt.*;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Modal dialog with a progress bar fed by a {@link CompressionListener}. Listener calls arrive on
+ * worker threads and are handed to the event dispatch thread.
+ */
+class ProgressDialog extends JDialog implements CompressionListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JProgressBar progressBar = new JProgressBar(0, 1000);
+    private final JLabel statusLabel = new JLabel(" ");
+    private final JLabel detailLabel = new JLabel(" ");
+
+    ProgressDialog(Frame owner, String title) {
+        super(owner, title, true);
+        setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+
+        JPanel panel = new JPanel();
+        panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
+        panel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
+        progressBar.setIndeterminate(true);
+        progressBar.setStringPainted(true);
+        progressBar.setPreferredSize(new Dimension(320, 22));
+        progressBar.setAlignmentX(Component.LEFT_ALIGNMENT);
+        statusLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        detailLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        panel.add(statusLabel);
+        panel.add(Box.createRigidArea(new Dimension(0, 8)));
+        panel.add(progressBar);
+        panel.add(Box.createRigidArea(new Dimension(0, 8)));
+        panel.add(detailLabel);
+        add(panel);
+        pack();
+        setLocationRelativeTo(owner);
+    }
+
+    @Override
+    public void phaseStarted(Phase phase, CompressionMetrics metrics) {
+        String status = switch (phase) {
+            case HISTOGRAM -> "Counting symbols...";
+            case TREE -> "Building code table...";
+            case ENCODE -> "Compressing...";
+            case DECODE -> "Decompressing...";
+            default -> phase.name();
+        };
+        SwingUtilities.invokeLater(() -> statusLabel.setText(status));
+    }
+
+    @Override
+    public void entryStarted(String name, CompressionMetrics metrics) {
+        SwingUtilities.invokeLater(() -> statusLabel.setText(name));
+    }
+
+    @Override
+    public void progress(CompressionMetrics metrics) {
+        double fraction = metrics.getFraction();
+        double throughput = metrics.getThroughput();
+        Duration eta = metrics.getEta();
+        SwingUtilities.invokeLater(() -> {
+            if (fraction >= 0) {
+                progressBar.setIndeterminate(false);
+                progressBar.setValue((int) (fraction * 1000));
+                progressBar.setString((int) (fraction * 100) + "%");
+            }
+            String detail = String.format(Locale.ROOT, "%.1f MB/s", throughput / 1e6);
+            if (eta != null)
+                detail += String.format(Locale.ROOT, ", %d:%02d remaining", eta.toMinutes(), eta.toSecondsPart());
+            detailLabel.setText(detail);
+        });
+    }
+}
@@ -1,3 +1,4 @@
+import CLI.CompressCLI;
 import GUI.CompressGUI;
 
 import javax.swing.*;
@@ -7,6 +8,14 @@ import java.util.stream.Collectors;
 
 public class Main {
     public static void main(String[] args) {
+        if (args.length > 0 && CompressCLI.isCommand(args[0])) {
+            System.exit(CompressCLI.run(args));
+        }
+        openGUI(args);
+    }
+
+    // kept out of main so that command-line runs never load AWT/Swing
+    private static void openGUI(String[] args) {
         if (args.length == 0) {
             new CompressGUI();
         } else {
@@ -0,0 +1,45 @@
+package logic;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only, memory-mapped view of an archive. Archives up to 2 GB are mapped once; larger ones
+ * are mapped region by region as slices are requested. Slices are independent buffers and can be
+ * read from several threads at once.
+ */
+class ArchiveChannel implements Closeable {
+
+    private final FileChannel channel;
+    private final long size;
+    private final MappedByteBuffer mapped;
+
+    ArchiveChannel(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.mapped = size <= Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+    }
+
+    ByteBuffer slice(long position, int length) throws IOException {
+        if (position < 0 || length < 0 || position + length > size)
+            throw new EOFException("truncated archive");
+        if (mapped != null)
+            return mapped.slice((int) position, length);
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    long size() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
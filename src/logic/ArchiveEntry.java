@@ -0,0 +1,26 @@
+package logic;
+
+/**
+ * Central directory record of one archived file.
+ *
+ * @param offset         position of the entry's local header in the archive, or of its solid
+ *                       group's header
+ * @param compressedSize bytes the entry occupies in the archive, headers included; a solid entry
+ *                       is charged its share of the group
+ * @param size           uncompressed size
+ * @param checksum       CRC32C of the uncompressed content, 0 in an encrypted archive
+ * @param index          checkpoints for range reads, {@link SeekIndex#NONE} if the entry has none
+ * @param solidOffset    where the entry starts in its solid group's content, -1 if it has its own
+ *                       local header
+ */
+public record ArchiveEntry(String name, long offset, long compressedSize, long size, int checksum, SeekIndex index,
+                           long solidOffset) {
+
+    public ArchiveEntry(String name, long offset, long compressedSize, long size, int checksum) {
+        this(name, offset, compressedSize, size, checksum, SeekIndex.NONE, -1);
+    }
+
+    public boolean isSolid() {
+        return solidOffset >= 0;
+    }
+}
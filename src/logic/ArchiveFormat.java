@@ -0,0 +1,124 @@
+package logic;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Constants of the .iak layout.
+ * <pre>
+ * version 1:  passwordLength(1) password treeSize(4) tree
+ *             { nameLength(1) name padBits(1) dataLength(4) data }*
+ *
+ * version 2:  magic(4) version(1) encryption(1) [salt(16) iterations(4) check(16)] codeLengths blockSize(4)
+ *             { nameLength(2) name codeLengths { rawLength(4) method(1) dataLength(4) padBits(1) checksum(4) data }* 0(4) }*
+ *             directory trailer
+ * </pre>
+ * Every version 2 block holds up to blockSize input bytes and is coded independently, so blocks
+ * can be encoded and decoded concurrently, and carries the CRC32C of its uncompressed bytes, which
+ * is checked whenever it is decoded. An entry ends with a block whose rawLength is 0.
+ * A block is Huffman coded with the archive's code, its entry's code or its own code (stored in
+ * front of the bits), LZ77 coded with its own tables (see {@link Lz77}) or, when none of these makes
+ * it smaller, stored as is. An archive or entry code without any lengths is not used by any block.
+ * A Huffman block whose method carries the {@link #INTERLEAVED} flag splits its bits into
+ * {@link #STREAMS} streams, one per quarter of the block, and starts (after its own code, if any)
+ * with the byte lengths of the first three streams: size(4) size(4) size(4). Its padBits is 0;
+ * each stream is padded to a whole byte and its symbol count follows from rawLength.
+ * With {@link #ENCRYPTION_AES_GCM} the header carries the key parameters, the data of every
+ * block is sealed on its own under a nonce given by its place in the archive, see
+ * {@link BlockCipher}, and the directory ends with an HMAC. A block's checksum is then 0, as the
+ * authentication tag covers the data.
+ * An entry with an empty name is a solid group: the concatenated content of small entries that
+ * the directory places in it by their solidOffset.
+ * The archive ends with a {@link CentralDirectory} that locates every entry and its
+ * {@link SeekIndex} checkpoints.
+ * The code is canonical and stored as its run-length coded code lengths, see {@link CanonicalCode}.
+ */
+public final class ArchiveFormat {
+
+    // version 1 archives start with the password length, which is never 0xFF in practice
+    static final byte[] MAGIC = {(byte) 0xFF, 'I', 'A', 'K'};
+
+    public static final int VERSION_1 = 1;
+    public static final int VERSION_2 = 2;
+
+    public static final int METHOD_STORED = 0;
+    public static final int METHOD_HUFFMAN = 1;
+    public static final int METHOD_LZ77 = 2;
+    public static final int METHOD_HUFFMAN_ENTRY = 3;
+    public static final int METHOD_HUFFMAN_BLOCK = 4;
+    public static final int INTERLEAVED = 0x80;
+
+    public static final int ENCRYPTION_NONE = 0;
+    public static final int ENCRYPTION_AES_GCM = 1;
+
+    public static final int STREAMS = 4;
+    // the stream sizes cost 12 bytes, not worth it on small blocks
+    static final int MIN_INTERLEAVED_LENGTH = 16 << 10;
+
+    // rawLength, method, dataLength, padBits and checksum
+    static final int BLOCK_HEADER_SIZE = 4 + 1 + 4 + 1 + 4;
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+    public static final int MIN_BLOCK_SIZE = 4 << 10;
+    public static final int MAX_BLOCK_SIZE = 64 << 20;
+
+    public static final long DEFAULT_INDEX_INTERVAL = 1 << 20;
+
+    // larger files keep their own entry in solid mode
+    public static final int SOLID_MAX_ENTRY_SIZE = 64 << 10;
+    // a solid group ends once it fills this many blocks, which bounds the block headers walked
+    // to reach one of its entries
+    static final int SOLID_GROUP_BLOCKS = 16;
+
+    private ArchiveFormat() {
+    }
+
+    /**
+     * Reads the format version. On return the file pointer is just past the version marker,
+     * which is the start of the file for version 1 archives.
+     */
+    static int readVersion(RandomAccessFile raf) throws IOException {
+        raf.seek(0);
+        byte[] magic = new byte[MAGIC.length];
+        if (raf.read(magic) != magic.length || !Arrays.equals(magic, MAGIC)) {
+            raf.seek(0);
+            return VERSION_1;
+        }
+        int version = raf.readUnsignedByte();
+        if (version != VERSION_2)
+            throw new IOException("unsupported archive version " + version);
+        return version;
+    }
+
+    /**
+     * An entry name is a plain file name: not empty (that marks a solid group), not "." or "..",
+     * and without a path separator, so that it cannot name a file outside the directory it is
+     * extracted to.
+     */
+    static boolean isValidEntryName(String name) {
+        return !name.isEmpty() && !name.equals(".") && !name.equals("..")
+                && name.indexOf('/') < 0 && name.indexOf('\\') < 0 && name.indexOf('\0') < 0;
+    }
+
+    /**
+     * The file {@code name} is extracted to, {@code decodedOutputPath + name}.
+     *
+     * @throws IOException if the name is not valid or the file would lie outside the output directory
+     */
+    static Path outputPath(String decodedOutputPath, String name) throws IOException {
+        IOException unsafe = new IOException("unsafe entry name \"" + name + "\"");
+        if (!isValidEntryName(name)) throw unsafe;
+        try {
+            Path path = Path.of(decodedOutputPath + name).normalize();
+            if (Objects.equals(path.getParent(), Path.of(decodedOutputPath + "_").normalize().getParent()))
+                return path;
+        } catch (InvalidPathException e) {
+            unsafe.initCause(e);
+        }
+        throw unsafe;
+    }
+}
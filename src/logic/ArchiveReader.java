@@ -0,0 +1,488 @@
+package logic;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+
+/**
+ * An archive opened for extraction: the header has been read, the password checked and the decode
+ * table built; the directory of an encrypted archive has been read and authenticated. A reader is
+ * safe to use from several threads at once.
+ */
+public class ArchiveReader implements Closeable {
+
+    private final File file;
+    private final ArchiveChannel archive;
+    private final int version;
+    private final DecodeTable decodeTable;
+    // null unless the blocks are encrypted
+    private final BlockCipher cipher;
+    // with a cipher, the sorted offsets of the local headers, whose ordinals are part of the nonces
+    private final long[] localHeaders;
+    private volatile List<ArchiveEntry> entries;
+
+    private ArchiveReader(File file, ArchiveChannel archive, int version, DecodeTable decodeTable, BlockCipher cipher,
+                          List<ArchiveEntry> entries) {
+        this.file = file;
+        this.archive = archive;
+        this.version = version;
+        this.decodeTable = decodeTable;
+        this.cipher = cipher;
+        this.entries = entries;
+        this.localHeaders = entries == null ? null
+                : entries.stream().mapToLong(ArchiveEntry::offset).sorted().distinct().toArray();
+    }
+
+    /**
+     * Opens an archive; the key of an encrypted archive is derived from {@code password} here. The
+     * derivation, PBKDF2 with 600,000 iterations, is deliberately slow, so keep one reader open
+     * for many reads of the same archive.
+     *
+     * @throws WrongPasswordException if the archive is protected by another password
+     */
+    public static ArchiveReader open(File encodedFile, String password) throws IOException {
+        int version;
+        DecodeTable decodeTable;
+        BlockCipher cipher = null;
+        List<ArchiveEntry> entries = null;
+        try (RandomAccessFile raf = new RandomAccessFile(encodedFile, "r")) {
+            version = ArchiveFormat.readVersion(raf);
+
+            if (version == ArchiveFormat.VERSION_1) {
+                // version 1 only stores the password, without encrypting anything
+                int passwordLength = raf.readByte();
+                if (passwordLength != 0) {
+                    byte[] passwordBytes = new byte[passwordLength];
+                    raf.readFully(passwordBytes);
+                    if (!Objects.equals(password, new String(passwordBytes)))
+                        throw new WrongPasswordException();
+                }
+            } else {
+                int encryption = raf.readUnsignedByte();
+                if (encryption == ArchiveFormat.ENCRYPTION_AES_GCM) {
+                    cipher = BlockCipher.readHeader(raf, password);
+                } else if (encryption != ArchiveFormat.ENCRYPTION_NONE) {
+                    throw new IOException("unsupported encryption " + encryption);
+                }
+            }
+            if (version == ArchiveFormat.VERSION_1) {
+                int treeSize = raf.readInt();
+                byte[] treeBytes = new byte[treeSize];
+                raf.readFully(treeBytes);
+                decodeTable = DecodeTable.fromTree(deserializeTreeFromBytes(treeBytes));
+            } else {
+                decodeTable = DecodeTable.fromCodeLengthsOrNull(CanonicalCode.readLengths(raf));
+            }
+            if (cipher != null) entries = List.copyOf(CentralDirectory.read(raf, cipher));
+        }
+        return new ArchiveReader(encodedFile, new ArchiveChannel(encodedFile), version, decodeTable, cipher, entries);
+    }
+
+    public List<ArchiveEntry> entries() throws IOException {
+        List<ArchiveEntry> list = entries;
+        if (list == null) {
+            list = List.copyOf(listEntries(file));
+            entries = list;
+        }
+        return list;
+    }
+
+    /**
+     * Opens the entry called {@code name} for sequential reading. Blocks are decoded only as they
+     * are read, so a consumer that stops early never decodes the rest; at the end the content is
+     * checked against the directory's checksum. Close the channel before the reader.
+     *
+     * @throws NoSuchFileException if the archive has no such entry
+     */
+    public ReadableByteChannel openEntry(String name) throws IOException {
+        return new EntryChannel(this, entry(name), null);
+    }
+
+    /**
+     * Reads up to {@code length} bytes of {@code entry} from uncompressed offset {@code offset}.
+     * Decoding starts from the entry's nearest checkpoint (see {@link SeekIndex}), so only the
+     * blocks overlapping the range are decoded.
+     *
+     * @return the bytes read, fewer than {@code length} only at the end of the entry
+     * @throws IllegalArgumentException if {@code offset} or {@code length} is negative, or
+     *                                  {@code offset} is past the end of a version 2 entry
+     */
+    public byte[] read(ArchiveEntry entry, long offset, int length) throws IOException {
+        if (offset < 0 || length < 0)
+            throw new IllegalArgumentException("negative offset " + offset + " or length " + length);
+        // version 1 entries have no size in the directory, so their buffer grows as it fills
+        boolean sized = entry.size() >= 0;
+        if (sized && offset > entry.size())
+            throw new IllegalArgumentException("offset " + offset + " is past the end of " + entry.name()
+                    + " (" + entry.size() + " bytes)");
+        try (EntryChannel channel = new EntryChannel(this, entry, null)) {
+            channel.seek(offset);
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, sized ? entry.size() - offset : 64 << 10));
+            while (true) {
+                if (!buffer.hasRemaining()) {
+                    if (sized || buffer.capacity() == length) break;
+                    buffer = ByteBuffer.allocate((int) Math.min(length, 2L * buffer.capacity())).put(buffer.flip());
+                }
+                if (channel.read(buffer) < 0) break;
+            }
+            return buffer.position() == buffer.capacity() ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+        }
+    }
+
+    public byte[] read(String name, long offset, int length) throws IOException {
+        return read(entry(name), offset, length);
+    }
+
+    ArchiveEntry entry(String name) throws IOException {
+        for (ArchiveEntry entry : entries()) {
+            if (entry.name().equals(name)) return entry;
+        }
+        throw new NoSuchFileException(name, null, "not in " + file);
+    }
+
+    /**
+     * Lists the entries of an archive. Version 1 archives have no directory and are scanned entry by
+     * entry; their uncompressed size is unknown and reported as -1.
+     */
+    public static List<ArchiveEntry> listEntries(File encodedFile) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(encodedFile, "r")) {
+            if (ArchiveFormat.readVersion(raf) != ArchiveFormat.VERSION_1)
+                return CentralDirectory.read(raf, null);
+
+            List<ArchiveEntry> entries = new ArrayList<>();
+            long fileStart = 0;
+            fileStart += raf.readByte() + 1;
+            raf.seek(fileStart);
+            fileStart += raf.readInt() + 4;
+            while (fileStart < raf.length()) {
+                raf.seek(fileStart);
+                int nameLength = raf.readByte();
+                byte[] nameBytes = new byte[nameLength];
+                raf.readFully(nameBytes);
+                raf.readByte();
+                int dataLength = raf.readInt();
+                long entryLength = 1 + nameLength + 1 + 4 + dataLength;
+                entries.add(new ArchiveEntry(new String(nameBytes, StandardCharsets.UTF_8), fileStart, entryLength, -1, 0));
+                fileStart += entryLength;
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Decodes the entry whose local header starts at {@code fileStart} to
+     * {@code decodedOutputPath + name}. Blocks are decoded on {@code pool}, at most {@code window}
+     * at a time.
+     *
+     * @return the name of the decoded entry
+     */
+    public String extract(long fileStart, String decodedOutputPath, ExecutorService pool, int window) throws IOException {
+        return extract(fileStart, null, decodedOutputPath, pool, window, new CompressionMetrics(null)).name();
+    }
+
+    /**
+     * Decodes {@code entry} to {@code decodedOutputPath + entry.name()}, or only checks it when
+     * {@code decodedOutputPath} is null. A version 2 entry is checked against the checksum of every
+     * block and against the directory's size and checksum.
+     *
+     * @return the number of bytes decoded
+     */
+    long extract(ArchiveEntry entry, String decodedOutputPath, ExecutorService pool, int window,
+                 CompressionMetrics metrics) throws IOException {
+        return extract(entry.offset(), entry, decodedOutputPath, pool, window, metrics).size();
+    }
+
+    // the name an entry was decoded under and its decoded size
+    record Extracted(String name, long size) {
+    }
+
+    // without an entry, the file is named by the local header; a deduplicated entry shares its
+    // data, and so its local header, with another name
+    Extracted extract(long fileStart, ArchiveEntry entry, String decodedOutputPath, ExecutorService pool,
+                   int window, CompressionMetrics metrics) throws IOException {
+        return version == ArchiveFormat.VERSION_1
+                ? decodeFile(fileStart, entry, decodedOutputPath, metrics)
+                : decodeBlocks(fileStart, entry, decodedOutputPath, pool, window, metrics);
+    }
+
+    private Extracted decodeFile(long fileStart, ArchiveEntry expected, String decodedOutputPath,
+                              CompressionMetrics metrics) throws IOException {
+        LegacyEntry entry = legacyEntry(fileStart);
+        String fileName = expected != null ? expected.name() : entry.name();
+        metrics.entryStarted(fileName);
+
+        try (FileOutputStream fos = decodedOutputPath == null ? null
+                : new FileOutputStream(ArchiveFormat.outputPath(decodedOutputPath, fileName).toFile())) {
+            long start = System.nanoTime();
+            ByteBuffer data = entry.data();
+            long size = decodeTable.decode(data, data.remaining() * 8L - entry.padBits(),
+                    fos == null ? OutputStream.nullOutputStream() : fos);
+            metrics.addTime(Phase.DECODE, start);
+            metrics.addBytes(entry.length(), size);
+            return new Extracted(fileName, size);
+        }
+    }
+
+    // a version 1 entry, one bit stream coded with the archive's tree; length includes the header
+    record LegacyEntry(String name, int padBits, ByteBuffer data, long length) {
+    }
+
+    LegacyEntry legacyEntry(long fileStart) throws IOException {
+        int fileNameLength = archive.slice(fileStart, 1).get(0);
+        byte[] fileNameBytes = new byte[fileNameLength];
+        archive.slice(fileStart + 1, fileNameLength).get(fileNameBytes);
+        String fileName = new String(fileNameBytes, StandardCharsets.UTF_8);
+
+        ByteBuffer header = archive.slice(fileStart + 1 + fileNameLength, 1 + 4);
+        int padBits = header.get(0);
+        int dataLength = header.getInt(1);
+        ByteBuffer data = archive.slice(fileStart + 1 + fileNameLength + 1 + 4, dataLength);
+        return new LegacyEntry(fileName, padBits, data, fileNameLength + 1 + 1 + 4 + dataLength);
+    }
+
+    DecodeTable decodeTable() {
+        return decodeTable;
+    }
+
+    private Extracted decodeBlocks(long fileStart, ArchiveEntry expected, String decodedOutputPath, ExecutorService pool,
+                                int window, CompressionMetrics metrics) throws IOException {
+        Deque<Future<ByteBuffer>> pending = new ArrayDeque<>();
+        CRC32C checksum = new CRC32C();
+        long size = 0;
+
+        try {
+            LocalHeader header = localHeader(fileStart);
+            if (header.name().isEmpty())
+                throw new IOException("offset " + fileStart + " is a solid group; extract its entries by name");
+            String fileName = expected != null ? expected.name() : header.name();
+            metrics.entryStarted(fileName);
+
+            // with no output path the blocks are only decoded and checked
+            try (FileChannel out = decodedOutputPath == null ? null
+                    : FileChannel.open(ArchiveFormat.outputPath(decodedOutputPath, fileName),
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                Block block;
+                long raw = 0;
+                for (long blockStart = header.firstBlock(); (block = block(blockStart)) != null; blockStart = block.next()) {
+                    Block next = block;
+                    long rawOffset = raw;
+                    // stored blocks are written straight from the mapped archive
+                    pending.add(next.method() == ArchiveFormat.METHOD_STORED && cipher == null
+                            ? CompletableFuture.completedFuture(decodeBlock(next, header, rawOffset, metrics))
+                            : pool.submit(() -> decodeBlock(next, header, rawOffset, metrics)));
+                    raw += next.rawLength();
+                    if (pending.size() >= window)
+                        size += writeBlock(out, Futures.await(pending.poll()), checksum, metrics);
+                }
+                while (!pending.isEmpty()) {
+                    size += writeBlock(out, Futures.await(pending.poll()), checksum, metrics);
+                }
+            }
+            if (expected != null && (size != expected.size()
+                    || (hasEntryChecksums() && (int) checksum.getValue() != expected.checksum())))
+                throw new IOException(fileName + ": checksum mismatch");
+            return new Extracted(fileName, size);
+        } finally {
+            pending.forEach(f -> f.cancel(true));
+        }
+    }
+
+    // the local header of a version 2 entry at offset: its name, its own code and where its first
+    // block starts
+    record LocalHeader(long offset, String name, DecodeTable table, long firstBlock) {
+    }
+
+    // a version 2 block that starts at position; next is where the following block header starts
+    record Block(int rawLength, int method, int padBits, int checksum, long position, ByteBuffer data, long next) {
+    }
+
+    int version() {
+        return version;
+    }
+
+    // encrypted archives leave the entry checksums at 0, the block tags cover the content instead
+    boolean hasEntryChecksums() {
+        return version == ArchiveFormat.VERSION_2 && cipher == null;
+    }
+
+    LocalHeader localHeader(long fileStart) throws IOException {
+        int fileNameLength = archive.slice(fileStart, 2).getShort(0) & 0xFFFF;
+        byte[] fileNameBytes = new byte[fileNameLength];
+        archive.slice(fileStart + 2, fileNameLength).get(fileNameBytes);
+        String fileName = new String(fileNameBytes, StandardCharsets.UTF_8);
+
+        long tableStart = fileStart + 2 + fileNameLength;
+        ByteBuffer table = archive.slice(tableStart, (int) Math.min(2 * 256, archive.size() - tableStart));
+        DecodeTable entryTable = DecodeTable.fromCodeLengthsOrNull(CanonicalCode.readLengths(table, 256));
+        return new LocalHeader(fileStart, fileName, entryTable, tableStart + table.position());
+    }
+
+    /**
+     * Reads the block header at {@code blockStart}.
+     *
+     * @return the block, or null for the end-of-entry marker
+     */
+    Block block(long blockStart) throws IOException {
+        ByteBuffer header = archive.slice(blockStart, 4);
+        int rawLength = header.getInt(0);
+        if (rawLength == 0) return null;
+        header = archive.slice(blockStart, ArchiveFormat.BLOCK_HEADER_SIZE);
+        int method = header.get(4) & 0xFF;
+        int dataLength = header.getInt(5);
+        int padBits = header.get(9);
+        int checksum = header.getInt(10);
+        long dataStart = blockStart + ArchiveFormat.BLOCK_HEADER_SIZE;
+        if (method == ArchiveFormat.METHOD_STORED) {
+            int storedLength = cipher == null ? rawLength : rawLength + BlockCipher.OVERHEAD;
+            if (dataLength != storedLength)
+                throw new IOException("corrupted block: stored length " + dataLength + " != " + storedLength);
+        } else if (!isCoded(method)) {
+            throw new IOException("corrupted block: unknown method " + method);
+        }
+        return new Block(rawLength, method, padBits, checksum, blockStart, archive.slice(dataStart, dataLength),
+                dataStart + dataLength);
+    }
+
+    /**
+     * Decodes a block of the entry or group at {@code header} that holds its content from
+     * {@code rawOffset} on; a stored block is returned as its slice of the archive.
+     */
+    ByteBuffer decodeBlock(Block block, LocalHeader header, long rawOffset, CompressionMetrics metrics)
+            throws IOException {
+        ByteBuffer data = block.data();
+        int dataLength = data.remaining();
+        int rawLength = block.rawLength();
+        DecodeTable entryTable = header.table();
+        if (cipher != null) {
+            long start = System.nanoTime();
+            data = cipher.open(ordinal(header.offset()), rawOffset, data,
+                    BlockCipher.aad(rawLength, block.method(), block.padBits()));
+            metrics.addTime(Phase.CIPHER, start);
+        }
+        if (block.method() == ArchiveFormat.METHOD_STORED) {
+            check(block, data);
+            metrics.addBytes(ArchiveFormat.BLOCK_HEADER_SIZE + dataLength, rawLength);
+            return data.duplicate();
+        }
+        long start = System.nanoTime();
+        int padBits = block.padBits();
+        boolean interleaved = (block.method() & ArchiveFormat.INTERLEAVED) != 0;
+        byte[] out = switch (block.method() & ~ArchiveFormat.INTERLEAVED) {
+            case ArchiveFormat.METHOD_LZ77 -> Lz77.decode(data, padBits, rawLength);
+            case ArchiveFormat.METHOD_HUFFMAN -> decodeHuffman(decodeTable, data, padBits, rawLength, interleaved);
+            case ArchiveFormat.METHOD_HUFFMAN_ENTRY -> decodeHuffman(entryTable, data, padBits, rawLength, interleaved);
+            default -> {
+                ByteBuffer in = data.duplicate();
+                DecodeTable blockTable = DecodeTable.fromCodeLengthsOrNull(CanonicalCode.readLengths(in, 256));
+                yield decodeHuffman(blockTable, in, padBits, rawLength, interleaved);
+            }
+        };
+        check(block, ByteBuffer.wrap(out));
+        metrics.addTime(Phase.DECODE, start);
+        metrics.addBytes(ArchiveFormat.BLOCK_HEADER_SIZE + dataLength, rawLength);
+        return ByteBuffer.wrap(out);
+    }
+
+    // the place of the local header at offset among those of the archive
+    private int ordinal(long offset) throws IOException {
+        int i = Arrays.binarySearch(localHeaders, offset);
+        if (i < 0)
+            throw new IOException("corrupted archive: no entry starts at " + offset);
+        return i;
+    }
+
+    // the tag of an encrypted block already covers its data
+    private void check(Block block, ByteBuffer decoded) throws IOException {
+        if (cipher != null) return;
+        CRC32C checksum = new CRC32C();
+        checksum.update(decoded.duplicate());
+        if ((int) checksum.getValue() != block.checksum())
+            throw new IOException("corrupted block at " + block.position() + ": checksum mismatch");
+    }
+
+    // only Huffman methods may be interleaved
+    private static boolean isCoded(int method) {
+        if (method == ArchiveFormat.METHOD_LZ77) return true;
+        int base = method & ~ArchiveFormat.INTERLEAVED;
+        return base >= ArchiveFormat.METHOD_HUFFMAN && base <= ArchiveFormat.METHOD_HUFFMAN_BLOCK
+                && base != ArchiveFormat.METHOD_LZ77;
+    }
+
+    private static byte[] decodeHuffman(DecodeTable table, ByteBuffer data, int padBits, int rawLength,
+                                        boolean interleaved) throws IOException {
+        if (table == null)
+            throw new IOException("corrupted block: its code table is empty");
+        byte[] out = new byte[rawLength];
+        if (interleaved) {
+            table.decodeInterleaved(splitStreams(data), out);
+            return out;
+        }
+        int decoded = table.decode(data, data.remaining() * 8L - padBits, out, 0, rawLength);
+        if (decoded != rawLength)
+            throw new IOException("corrupted block: expected " + rawLength + " bytes, decoded " + decoded);
+        return out;
+    }
+
+    // the stream sizes at the start of data, see ArchiveFormat
+    private static ByteBuffer[] splitStreams(ByteBuffer data) throws IOException {
+        ByteBuffer[] streams = new ByteBuffer[ArchiveFormat.STREAMS];
+        int sizesLength = 4 * (streams.length - 1);
+        if (data.remaining() < sizesLength)
+            throw new IOException("corrupted block: stream sizes missing");
+        int offset = data.position() + sizesLength;
+        for (int k = 0; k < streams.length; k++) {
+            int size = k < streams.length - 1 ? data.getInt(data.position() + 4 * k) : data.limit() - offset;
+            if (size < 0 || size > data.limit() - offset)
+                throw new IOException("corrupted block: stream " + k + " has invalid size " + size);
+            streams[k] = data.slice(offset, size);
+            offset += size;
+        }
+        return streams;
+    }
+
+    // returns the block's length; out is null when only checking
+    private static int writeBlock(FileChannel out, ByteBuffer block, CRC32C checksum, CompressionMetrics metrics)
+            throws IOException {
+        int length = block.remaining();
+        checksum.update(block.duplicate());
+        if (out == null) return length;
+        long start = System.nanoTime();
+        while (block.hasRemaining()) {
+            out.write(block);
+        }
+        metrics.addTime(Phase.WRITE, start);
+        return length;
+    }
+
+    private static Node deserializeTreeFromBytes(byte[] treeBytes) throws IOException {
+        ByteArrayInputStream bais = new ByteArrayInputStream(treeBytes);
+        DataInputStream dis = new DataInputStream(bais);
+        return readTree(dis);
+    }
+
+    private static Node readTree(DataInputStream dis) throws IOException {
+        boolean isLeaf = dis.readBoolean();
+        if (isLeaf) {
+            byte b = dis.readByte();
+            return new Leaf(b, 0);
+        } else {
+            Node left = readTree(dis);
+            Node right = readTree(dis);
+            return new Node(left, right);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        archive.close();
+    }
+}
@@ -0,0 +1,71 @@
+package logic;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * MSB-first reader keeping up to 64 bits left-aligned in {@link #bits}. Bits below
+ * {@link #count} are either zero or already the following bits of the stream, so refilling
+ * can OR whole 8-byte words in.
+ */
+final class BitReader {
+    private final ByteBuffer in;
+    private final int start;
+    private int pos;
+    private final int limit;
+    private int zeroBits;
+
+    long bits;
+    int count;
+
+    BitReader(ByteBuffer in) {
+        this.in = in.order() == ByteOrder.BIG_ENDIAN ? in : in.duplicate().order(ByteOrder.BIG_ENDIAN);
+        this.start = in.position();
+        this.pos = start;
+        this.limit = in.limit();
+    }
+
+    /**
+     * Tops {@link #bits} up to at least 57 valid bits.
+     */
+    void refill() {
+        if (count > 56) return;
+        if (limit - pos >= 8) {
+            bits |= in.getLong(pos) >>> count;
+            int bytes = (64 - count) >>> 3;
+            pos += bytes;
+            count += bytes << 3;
+            return;
+        }
+        while (count <= 56) {
+            // past the end: feed zero bits, the caller stops at totalBits
+            if (pos < limit)
+                bits |= (in.get(pos++) & 0xFFL) << (56 - count);
+            else
+                zeroBits += 8;
+            count += 8;
+        }
+    }
+
+    void skip(int n) {
+        bits <<= n;
+        count -= n;
+    }
+
+    /**
+     * Reads {@code n} bits, at most as many as the last {@link #refill()} guaranteed.
+     */
+    int read(int n) {
+        if (n == 0) return 0;
+        int value = (int) (bits >>> (64 - n));
+        skip(n);
+        return value;
+    }
+
+    /**
+     * Bits consumed since construction, including zero bits fed past the end of the buffer.
+     */
+    long position() {
+        return (long) (pos - start) * 8 + zeroBits - count;
+    }
+}
@@ -0,0 +1,75 @@
+package logic;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * MSB-first bit packer. Codes are shifted into a 64-bit accumulator and moved to the output buffer
+ * 32 bits at a time; the buffer goes to the stream only when it is full.
+ */
+public class BitWriter {
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int pos;
+
+    private long acc;
+    private int bitCount;
+    private long bytesWritten;
+
+    public BitWriter(OutputStream out) {
+        this(out, 1 << 16);
+    }
+
+    public BitWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[Math.max(bufferSize, 8)];
+    }
+
+    /**
+     * Appends the low {@code length} bits of {@code code}, at most 32.
+     */
+    public void write(int code, int length) throws IOException {
+        acc = (acc << length) | (code & 0xFFFFFFFFL);
+        bitCount += length;
+        if (bitCount >= 32) {
+            bitCount -= 32;
+            if (pos > buffer.length - 4) flushBuffer();
+            int word = (int) (acc >>> bitCount);
+            buffer[pos] = (byte) (word >>> 24);
+            buffer[pos + 1] = (byte) (word >>> 16);
+            buffer[pos + 2] = (byte) (word >>> 8);
+            buffer[pos + 3] = (byte) word;
+            pos += 4;
+            bytesWritten += 4;
+        }
+    }
+
+    /**
+     * Writes the pending bits, zero-padding the last byte, and flushes the buffer.
+     *
+     * @return the number of pad bits in the last byte
+     */
+    public int finish() throws IOException {
+        int padBits = (8 - (bitCount & 7)) & 7;
+        acc <<= padBits;
+        bitCount += padBits;
+        while (bitCount > 0) {
+            if (pos == buffer.length) flushBuffer();
+            bitCount -= 8;
+            buffer[pos++] = (byte) (acc >>> bitCount);
+            bytesWritten++;
+        }
+        flushBuffer();
+        return padBits;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, pos);
+        pos = 0;
+    }
+}
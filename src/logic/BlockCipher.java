@@ -0,0 +1,193 @@
+package logic;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * AES-256-GCM for the data of version 2 blocks, keyed from a password with PBKDF2-HMAC-SHA256.
+ * <pre>
+ * header:  salt(16) iterations(4) check(16)
+ * block:   ciphertext tag(16)
+ * </pre>
+ * Every block is sealed on its own, so blocks are encrypted and decrypted in parallel and in any
+ * order. Its nonce is its place in the archive, the ordinal of its local header and the
+ * uncompressed offset it starts at there, and its header fields are additional data, so a block
+ * moved, copied or cut out of another entry fails to open. The central directory is authenticated
+ * with an HMAC-SHA256, see {@link CentralDirectory}. The block key, the directory key and the
+ * check, which tells a wrong password from a corrupted archive, are HMACs of the derived key under
+ * separate labels. The salt is random, so every archive has its own keys and no nonce repeats
+ * under one key. JCE uses the AES and carry-less multiply instructions where the CPU has them.
+ */
+final class BlockCipher {
+
+    static final int SALT_LENGTH = 16;
+    static final int TAG_LENGTH = 16;
+    static final int OVERHEAD = TAG_LENGTH;
+    static final int MAC_LENGTH = 32;
+    static final int DEFAULT_ITERATIONS = 600_000;
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private final SecretKey blockKey;
+    private final SecretKey directoryKey;
+    private final byte[] check;
+    private final byte[] salt;
+    private final int iterations;
+    private final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(BlockCipher::newCipher);
+
+    private BlockCipher(byte[] key, byte[] salt, int iterations) {
+        this.blockKey = new SecretKeySpec(subkey(key, "iak block key"), "AES");
+        this.directoryKey = new SecretKeySpec(subkey(key, "iak directory key"), MAC_ALGORITHM);
+        this.check = Arrays.copyOf(subkey(key, "iak key check"), TAG_LENGTH);
+        this.salt = salt;
+        this.iterations = iterations;
+        Arrays.fill(key, (byte) 0);
+    }
+
+    /**
+     * A cipher with a new random salt.
+     */
+    static BlockCipher create(String password) {
+        byte[] salt = new byte[SALT_LENGTH];
+        new SecureRandom().nextBytes(salt);
+        return new BlockCipher(deriveKey(password, salt, DEFAULT_ITERATIONS), salt, DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * Reads the header written by {@link #writeHeader} and derives the keys.
+     *
+     * @throws WrongPasswordException if {@code password} is null or does not match the check
+     */
+    static BlockCipher readHeader(DataInput in, String password) throws IOException {
+        byte[] salt = new byte[SALT_LENGTH];
+        in.readFully(salt);
+        int iterations = in.readInt();
+        byte[] check = new byte[TAG_LENGTH];
+        in.readFully(check);
+        if (iterations < 1)
+            throw new IOException("corrupted archive: " + iterations + " key iterations");
+        if (password == null || password.isEmpty())
+            throw new WrongPasswordException();
+        BlockCipher cipher = new BlockCipher(deriveKey(password, salt, iterations), salt, iterations);
+        if (!MessageDigest.isEqual(cipher.check, check))
+            throw new WrongPasswordException();
+        return cipher;
+    }
+
+    void writeHeader(DataOutputStream dos) throws IOException {
+        dos.write(salt);                                // salt              -- 16 Bytes
+        dos.writeInt(iterations);                       // key iterations    -- 4  Bytes
+        dos.write(check);                               // key check         -- 16 Bytes
+    }
+
+    /**
+     * Encrypts {@code data}, the block at uncompressed offset {@code rawOffset} under the
+     * {@code entry}th local header of the archive.
+     */
+    byte[] seal(int entry, long rawOffset, byte[] data, byte[] aad) throws IOException {
+        try {
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.ENCRYPT_MODE, blockKey, nonce(entry, rawOffset));
+            cipher.updateAAD(aad);
+            return cipher.doFinal(data);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Decrypts the data of a block sealed by {@link #seal} with the same place in the archive.
+     *
+     * @throws IOException if the data or {@code aad} were changed, or the block was sealed elsewhere
+     */
+    ByteBuffer open(int entry, long rawOffset, ByteBuffer sealed, byte[] aad) throws IOException {
+        if (sealed.remaining() < OVERHEAD)
+            throw new IOException("corrupted block: " + sealed.remaining() + " bytes of encrypted data");
+        try {
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.DECRYPT_MODE, blockKey, nonce(entry, rawOffset));
+            cipher.updateAAD(aad);
+            ByteBuffer out = ByteBuffer.allocate(cipher.getOutputSize(sealed.remaining()));
+            cipher.doFinal(sealed.duplicate(), out);
+            return out.flip();
+        } catch (AEADBadTagException e) {
+            throw new IOException("corrupted block: authentication failed");
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * The additional data of a block: the header fields that say how to decode it.
+     */
+    static byte[] aad(int rawLength, int method, int padBits) {
+        return ByteBuffer.allocate(4 + 1 + 1).putInt(rawLength).put((byte) method).put((byte) padBits).array();
+    }
+
+    /**
+     * The HMAC of the central directory {@code directory[0, length)} written at
+     * {@code directoryOffset}.
+     */
+    byte[] directoryMac(byte[] directory, int length, long directoryOffset) throws IOException {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(directoryKey);
+            mac.update(directory, 0, length);
+            mac.update(ByteBuffer.allocate(8).putLong(directoryOffset).flip());
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static GCMParameterSpec nonce(int entry, long rawOffset) {
+        byte[] iv = ByteBuffer.allocate(12).putInt(entry).putLong(rawOffset).array();
+        return new GCMParameterSpec(TAG_LENGTH * 8, iv);
+    }
+
+    private static byte[] deriveKey(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, 256);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    // HMAC-SHA256 of the label under the derived key, one key per purpose
+    private static byte[] subkey(byte[] key, String label) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key, MAC_ALGORITHM));
+            return mac.doFinal(label.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package logic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.CRC32C;
+
+/**
+ * Byte frequency counter. Consecutive bytes are counted into four separate tables so that runs of
+ * the same value do not serialize on one counter; the tables are summed when the counts are read.
+ * Histograms of whole files, from {@link #countEach} or {@link #countFile}, also carry a hash of
+ * the content: the CRC32C of every {@link #CHUNK_SIZE} chunk, folded in order.
+ */
+public class ByteHistogram {
+
+    static final int CHUNK_SIZE = 8 << 20;
+
+    private final long[] t0 = new long[256];
+    private final long[] t1 = new long[256];
+    private final long[] t2 = new long[256];
+    private final long[] t3 = new long[256];
+    private long contentHash;
+
+    public void add(byte[] data, int offset, int length) {
+        long[] c0 = t0, c1 = t1, c2 = t2, c3 = t3;
+        int i = offset;
+        int end = offset + length;
+        int end4 = offset + (length & ~3);
+        for (; i < end4; i += 4) {
+            c0[data[i] & 0xFF]++;
+            c1[data[i + 1] & 0xFF]++;
+            c2[data[i + 2] & 0xFF]++;
+            c3[data[i + 3] & 0xFF]++;
+        }
+        for (; i < end; i++) {
+            c0[data[i] & 0xFF]++;
+        }
+    }
+
+    public void merge(ByteHistogram other) {
+        long[] counts = other.counts();
+        for (int s = 0; s < 256; s++) {
+            t0[s] += counts[s];
+        }
+    }
+
+    /**
+     * @return the content hash of a file counted by {@link #countEach} or {@link #countFile}, 0 otherwise
+     */
+    public long contentHash() {
+        return contentHash;
+    }
+
+    // adds the counts and hash of the next chunk of the same file
+    private void mergeChunk(ByteHistogram chunk) {
+        merge(chunk);
+        contentHash = contentHash * 0x9E3779B97F4A7C15L + chunk.contentHash;
+    }
+
+    public long[] counts() {
+        long[] counts = new long[256];
+        for (int s = 0; s < 256; s++) {
+            counts[s] = t0[s] + t1[s] + t2[s] + t3[s];
+        }
+        return counts;
+    }
+
+    /**
+     * Counts one file on the calling thread, chunk by chunk like {@link #countEach}.
+     */
+    public static ByteHistogram countFile(File file) throws IOException {
+        ByteHistogram histogram = new ByteHistogram();
+        long length = file.length();
+        for (long offset = 0; offset < length; offset += CHUNK_SIZE) {
+            histogram.mergeChunk(CountTask.countChunk(new Chunk(0, file, offset, (int) Math.min(CHUNK_SIZE, length - offset))));
+        }
+        return histogram;
+    }
+
+    /**
+     * Counts all files on {@code pool}, splitting them into chunks of {@link #CHUNK_SIZE} bytes that
+     * are counted independently and merged.
+     */
+    public static ByteHistogram count(List<File> files, ForkJoinPool pool) {
+        ByteHistogram total = new ByteHistogram();
+        for (ByteHistogram histogram : countEach(files, pool)) {
+            total.merge(histogram);
+        }
+        return total;
+    }
+
+    /**
+     * Like {@link #count}, but returns one histogram per file.
+     */
+    public static List<ByteHistogram> countEach(List<File> files, ForkJoinPool pool) {
+        List<Chunk> chunks = new ArrayList<>();
+        List<ByteHistogram> histograms = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+            long length = file.length();
+            for (long offset = 0; offset < length; offset += CHUNK_SIZE) {
+                chunks.add(new Chunk(i, file, offset, (int) Math.min(CHUNK_SIZE, length - offset)));
+            }
+            histograms.add(new ByteHistogram());
+        }
+        ByteHistogram[] counted = new ByteHistogram[chunks.size()];
+        if (!chunks.isEmpty())
+            pool.invoke(new CountTask(chunks, counted, 0, chunks.size()));
+        for (int i = 0; i < counted.length; i++) {
+            histograms.get(chunks.get(i).fileIndex()).mergeChunk(counted[i]);
+        }
+        return histograms;
+    }
+
+    private record Chunk(int fileIndex, File file, long offset, int length) {
+    }
+
+    private static final class CountTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<Chunk> chunks;
+        private final transient ByteHistogram[] counted;
+        private final int from;
+        private final int to;
+
+        CountTask(List<Chunk> chunks, ByteHistogram[] counted, int from, int to) {
+            this.chunks = chunks;
+            this.counted = counted;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                try {
+                    counted[from] = countChunk(chunks.get(from));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new CountTask(chunks, counted, from, mid), new CountTask(chunks, counted, mid, to));
+        }
+        private static ByteHistogram countChunk(Chunk chunk) throws IOException {
+            ByteHistogram histogram = new ByteHistogram();
+            CRC32C crc = new CRC32C();
+            ByteBuffer buffer = ByteBuffer.allocate(Math.min(1 << 20, chunk.length()));
+            try (FileChannel channel = FileChannel.open(chunk.file().toPath(), StandardOpenOption.READ)) {
+                long position = chunk.offset();
+                long end = chunk.offset() + chunk.length();
+                while (position < end) {
+                    buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                    int n = channel.read(buffer, position);
+                    if (n < 0) break;
+                    histogram.add(buffer.array(), 0, n);
+                    crc.update(buffer.array(), 0, n);
+                    position += n;
+                }
+            }
+            histogram.contentHash = crc.getValue();
+            return histogram;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package logic;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Canonical Huffman codes. A code is fully described by its code lengths: symbols are ordered by
+ * (length, value) and receive consecutive codes, so only the lengths need to be stored. The byte
+ * alphabet has 256 symbols; the LZ77 tables of {@link Lz77} are larger.
+ */
+public final class CanonicalCode {
+
+    public static final int MAX_CODE_LENGTH = 32;
+    public static final int DEFAULT_MAX_CODE_LENGTH = 15;
+    // 256 symbols always fit in 8 bits
+    public static final int MIN_CODE_LENGTH = 8;
+
+    private CanonicalCode() {
+    }
+
+    /**
+     * Caps every length at {@code maxLength}. Codes of the rarest symbols are lengthened until the
+     * lengths satisfy the Kraft inequality again, then any slack left over is used to shorten the
+     * most frequent codes.
+     */
+    public static void limitLengths(int[] lengths, long[] frequencies, int maxLength) {
+        CodeLengthBuilder.forCurrentThread().limit(lengths, frequencies, maxLength);
+    }
+
+    /**
+     * Assigns canonical codes; {@code lengths[s] == 0} marks a symbol without a code.
+     */
+    public static int[] codes(int[] lengths) {
+        int[] lengthCount = new int[MAX_CODE_LENGTH + 1];
+        for (int s = 0; s < lengths.length; s++) {
+            if (lengths[s] > 0) lengthCount[lengths[s]]++;
+        }
+        long[] nextCode = new long[MAX_CODE_LENGTH + 1];
+        long code = 0;
+        for (int bits = 1; bits <= MAX_CODE_LENGTH; bits++) {
+            code = (code + lengthCount[bits - 1]) << 1;
+            nextCode[bits] = code;
+        }
+        int[] codes = new int[lengths.length];
+        for (int s = 0; s < lengths.length; s++) {
+            if (lengths[s] > 0) codes[s] = (int) nextCode[lengths[s]]++;
+        }
+        return codes;
+    }
+
+    /**
+     * Writes the lengths as {@code (length, run - 1)} byte pairs covering every symbol.
+     */
+    public static void writeLengths(DataOutput out, int[] lengths) throws IOException {
+        int s = 0;
+        while (s < lengths.length) {
+            int run = 1;
+            while (s + run < lengths.length && run < 256 && lengths[s + run] == lengths[s]) run++;
+            out.writeByte(lengths[s]);
+            out.writeByte(run - 1);
+            s += run;
+        }
+    }
+
+    public static int[] readLengths(DataInput in) throws IOException {
+        return readLengths(in, 256);
+    }
+
+    public static int[] readLengths(DataInput in, int symbols) throws IOException {
+        int[] lengths = new int[symbols];
+        int s = 0;
+        while (s < symbols) {
+            s = fillRun(lengths, s, in.readUnsignedByte(), in.readUnsignedByte());
+        }
+        return lengths;
+    }
+
+    /**
+     * Reads lengths written by {@link #writeLengths} from the position of {@code in}.
+     */
+    public static int[] readLengths(ByteBuffer in, int symbols) throws IOException {
+        int[] lengths = new int[symbols];
+        int s = 0;
+        try {
+            while (s < symbols) {
+                s = fillRun(lengths, s, in.get() & 0xFF, in.get() & 0xFF);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("corrupted code length table", e);
+        }
+        return lengths;
+    }
+
+    private static int fillRun(int[] lengths, int s, int length, int run) throws IOException {
+        run++;
+        if (length > MAX_CODE_LENGTH || s + run > lengths.length)
+            throw new IOException("corrupted code length table");
+        Arrays.fill(lengths, s, s + run, length);
+        return s + run;
+    }
+}
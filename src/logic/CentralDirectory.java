@@ -0,0 +1,118 @@
+package logic;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry directory stored at the end of version 2 archives.
+ * <pre>
+ * directory:  entryCount(4) { nameLength(2) name offset(8) compressedSize(8) size(8) checksum(4)
+ *                             solidOffset(8) checkpoints(4) { rawOffset(8) blockOffset(8) }* }*
+ * trailer:    directoryOffset(8) directoryLength(4) magic(4)
+ * </pre>
+ * The trailer has a fixed size, so a reader needs one seek to the trailer and one read of the
+ * directory to list the archive or locate any entry. In an encrypted archive the directory ends
+ * with the HMAC of the bytes before it and of directoryOffset, see {@link BlockCipher#directoryMac},
+ * which is checked before the entries are read when the archive is opened with its password;
+ * listing without the password skips it.
+ */
+public final class CentralDirectory {
+
+    static final int TRAILER_SIZE = 8 + 4 + 4;
+
+    private CentralDirectory() {
+    }
+
+    /**
+     * @param cipher the archive's cipher, whose directory HMAC is appended, or null
+     */
+    static void write(DataOutputStream dos, long directoryOffset, List<ArchiveEntry> entries, BlockCipher cipher)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream dir = new DataOutputStream(bytes);
+        dir.writeInt(entries.size());
+        for (ArchiveEntry entry : entries) {
+            byte[] nameBytes = entry.name().getBytes(StandardCharsets.UTF_8);
+            dir.writeShort(nameBytes.length);
+            dir.write(nameBytes);
+            dir.writeLong(entry.offset());
+            dir.writeLong(entry.compressedSize());
+            dir.writeLong(entry.size());
+            dir.writeInt(entry.checksum());
+            dir.writeLong(entry.solidOffset());
+            SeekIndex index = entry.index();
+            dir.writeInt(index.size());
+            for (int i = 0; i < index.size(); i++) {
+                dir.writeLong(index.rawOffsets()[i]);
+                dir.writeLong(index.blockOffsets()[i]);
+            }
+        }
+        if (cipher != null) dir.write(cipher.directoryMac(bytes.toByteArray(), bytes.size(), directoryOffset));
+        dir.flush();
+
+        dos.write(bytes.toByteArray());
+        dos.writeLong(directoryOffset);
+        dos.writeInt(bytes.size());
+        dos.write(ArchiveFormat.MAGIC);
+    }
+
+    /**
+     * @param cipher the archive's cipher, to check the directory HMAC, or null to skip it
+     */
+    static List<ArchiveEntry> read(RandomAccessFile raf, BlockCipher cipher) throws IOException {
+        long length = raf.length();
+        if (length < TRAILER_SIZE)
+            throw new IOException("archive has no directory trailer");
+        raf.seek(length - TRAILER_SIZE);
+        long directoryOffset = raf.readLong();
+        int directoryLength = raf.readInt();
+        byte[] magic = new byte[ArchiveFormat.MAGIC.length];
+        raf.readFully(magic);
+        if (!Arrays.equals(magic, ArchiveFormat.MAGIC)
+                || directoryOffset < 0 || directoryOffset + directoryLength > length - TRAILER_SIZE)
+            throw new IOException("corrupted archive directory");
+
+        byte[] bytes = new byte[directoryLength];
+        raf.seek(directoryOffset);
+        raf.readFully(bytes);
+        if (cipher != null) {
+            int macStart = directoryLength - BlockCipher.MAC_LENGTH;
+            if (macStart < 0 || !MessageDigest.isEqual(cipher.directoryMac(bytes, macStart, directoryOffset),
+                    Arrays.copyOfRange(bytes, macStart, directoryLength)))
+                throw new IOException("corrupted archive directory: authentication failed");
+        }
+        DataInputStream dir = new DataInputStream(new ByteArrayInputStream(bytes));
+        int count = dir.readInt();
+        List<ArchiveEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] nameBytes = new byte[dir.readUnsignedShort()];
+            dir.readFully(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+            long offset = dir.readLong();
+            long compressedSize = dir.readLong();
+            long size = dir.readLong();
+            int checksum = dir.readInt();
+            long solidOffset = dir.readLong();
+            entries.add(new ArchiveEntry(name, offset, compressedSize, size, checksum, readIndex(dir), solidOffset));
+        }
+        return entries;
+    }
+
+    private static SeekIndex readIndex(DataInputStream dir) throws IOException {
+        int checkpoints = dir.readInt();
+        if (checkpoints == 0) return SeekIndex.NONE;
+        if (checkpoints < 0 || checkpoints > dir.available() / 16)
+            throw new IOException("corrupted archive directory");
+        long[] rawOffsets = new long[checkpoints];
+        long[] blockOffsets = new long[checkpoints];
+        for (int i = 0; i < checkpoints; i++) {
+            rawOffsets[i] = dir.readLong();
+            blockOffsets[i] = dir.readLong();
+        }
+        return new SeekIndex(rawOffsets, blockOffsets);
+    }
+}
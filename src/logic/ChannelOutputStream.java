@@ -0,0 +1,90 @@
+package logic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Output stream over a {@link WritableByteChannel} that collects writes in one reusable direct buffer and
+ * hands it to the channel only when it is full, so the number of write calls is
+ * O(bytes / buffer size). {@link #position()} counts every byte accepted so far as a long.
+ */
+class ChannelOutputStream extends OutputStream {
+
+    static final int BUFFER_SIZE = 1 << 20;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private long position;
+
+    ChannelOutputStream(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    static ChannelOutputStream create(File file) throws IOException {
+        return new ChannelOutputStream(FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), BUFFER_SIZE);
+    }
+
+    /**
+     * Buffers writes to {@code out}; closing the result closes {@code out}.
+     */
+    static ChannelOutputStream of(OutputStream out) {
+        return new ChannelOutputStream(Channels.newChannel(out), BUFFER_SIZE);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!buffer.hasRemaining()) drain();
+        buffer.put((byte) b);
+        position++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        position += len;
+        if (len >= buffer.capacity()) {
+            drain();
+            ByteBuffer src = ByteBuffer.wrap(b, off, len);
+            while (src.hasRemaining()) channel.write(src);
+            return;
+        }
+        while (len > 0) {
+            if (!buffer.hasRemaining()) drain();
+            int n = Math.min(len, buffer.remaining());
+            buffer.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    long position() {
+        return position;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+}
@@ -0,0 +1,157 @@
+package logic;
+
+import java.util.Arrays;
+
+/**
+ * Huffman code lengths computed on primitive arrays. Used symbols are sorted by count, merged with
+ * the two-queue method and turned into lengths in place (Moffat and Katajainen), so no tree is
+ * built and nothing is allocated per call. Each thread keeps one instance as its workspace.
+ */
+final class CodeLengthBuilder {
+
+    private static final ThreadLocal<CodeLengthBuilder> WORKSPACE = ThreadLocal.withInitial(CodeLengthBuilder::new);
+
+    private static final int SYMBOL_BITS = 9;
+    private static final long MAX_FREQUENCY = (1L << (63 - SYMBOL_BITS)) - 1;
+
+    // frequency << SYMBOL_BITS | symbol of the used symbols, sorted by frequency, then symbol
+    private final long[] keys = new long[DecodeTable.MAX_SYMBOLS];
+    // node weights during the merge, code lengths afterwards
+    private final long[] work = new long[DecodeTable.MAX_SYMBOLS];
+
+    private CodeLengthBuilder() {
+    }
+
+    static CodeLengthBuilder forCurrentThread() {
+        return WORKSPACE.get();
+    }
+
+    /**
+     * Writes the code lengths for {@code frequencies}, limited to {@code maxLength} bits, to
+     * {@code lengths}. Symbols that never occur get length 0.
+     */
+    void build(long[] frequencies, int maxLength, int[] lengths) {
+        Arrays.fill(lengths, 0, frequencies.length, 0);
+        int n = 0;
+        for (int s = 0; s < frequencies.length; s++) {
+            if (frequencies[s] > 0) keys[n++] = key(frequencies[s], s);
+        }
+        if (n == 0) return;
+        if (n == 1) {
+            lengths[symbol(keys[0])] = 1;
+            return;
+        }
+        Arrays.sort(keys, 0, n);
+
+        long[] a = work;
+        for (int i = 0; i < n; i++) a[i] = keys[i] >>> SYMBOL_BITS;
+
+        // merge: a[t] becomes the weight of internal node t, merged leaves and nodes point to their parent
+        int leaf = 0;
+        int node = 0;
+        for (int t = 0; t < n - 1; t++) {
+            if (leaf >= n || (node < t && a[node] < a[leaf])) {
+                a[t] = a[node];
+                a[node++] = t;
+            } else {
+                a[t] = a[leaf++];
+            }
+            if (leaf >= n || (node < t && a[node] < a[leaf])) {
+                a[t] += a[node];
+                a[node++] = t;
+            } else {
+                a[t] += a[leaf++];
+            }
+        }
+
+        // parent pointers to internal node depths, the root n - 2 has depth 0
+        a[n - 2] = 0;
+        for (int t = n - 3; t >= 0; t--) a[t] = a[(int) a[t]] + 1;
+
+        // depths of internal nodes to leaf depths, longest codes for the rarest symbols
+        int available = 1;
+        int used = 0;
+        int depth = 0;
+        int t = n - 2;
+        int x = n - 1;
+        while (available > 0) {
+            while (t >= 0 && a[t] == depth) {
+                used++;
+                t--;
+            }
+            while (available > used) {
+                a[x--] = depth;
+                available--;
+            }
+            available = 2 * used;
+            depth++;
+            used = 0;
+        }
+
+        for (int i = 0; i < n; i++) lengths[symbol(keys[i])] = (int) a[i];
+        limit(lengths, n, maxLength);
+    }
+
+    /**
+     * See {@link CanonicalCode#limitLengths}.
+     */
+    void limit(int[] lengths, long[] frequencies, int maxLength) {
+        int n = 0;
+        for (int s = 0; s < lengths.length; s++) {
+            if (lengths[s] > 0) keys[n++] = key(frequencies[s], s);
+        }
+        Arrays.sort(keys, 0, n);
+        limit(lengths, n, maxLength);
+    }
+
+    // caps the lengths of the n sorted symbols and repairs the Kraft sum
+    private void limit(int[] lengths, int n, int maxLength) {
+        long full = 1L << maxLength;
+        long kraft = 0;
+        for (int i = 0; i < n; i++) {
+            int s = symbol(keys[i]);
+            lengths[s] = Math.min(lengths[s], maxLength);
+            kraft += 1L << (maxLength - lengths[s]);
+        }
+        if (kraft <= full) return;
+
+        // lengthen the longest codes below the cap, rarest symbols first
+        while (kraft > full) {
+            int pick = -1;
+            for (int i = 0; i < n; i++) {
+                int s = symbol(keys[i]);
+                if (lengths[s] < maxLength && (pick < 0 || lengths[s] > lengths[pick]))
+                    pick = s;
+            }
+            if (pick < 0)
+                throw new IllegalArgumentException(n + " symbols do not fit in " + maxLength + "-bit codes");
+            kraft -= 1L << (maxLength - lengths[pick] - 1);
+            lengths[pick]++;
+        }
+
+        // spend the slack on the most frequent symbols
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = n - 1; i >= 0; i--) {
+                int s = symbol(keys[i]);
+                long gain = 1L << (maxLength - lengths[s]);
+                if (lengths[s] > 1 && kraft + gain <= full) {
+                    lengths[s]--;
+                    kraft += gain;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private static long key(long frequency, int symbol) {
+        if (frequency > MAX_FREQUENCY)
+            throw new IllegalArgumentException("frequency " + frequency + " is too large");
+        return frequency << SYMBOL_BITS | symbol;
+    }
+
+    private static int symbol(long key) {
+        return (int) (key & ((1 << SYMBOL_BITS) - 1));
+    }
+}
@@ -0,0 +1,52 @@
+package logic;
+
+import java.util.Arrays;
+
+/**
+ * A canonical Huffman code over bytes; {@code lengths[s] == 0} marks a symbol without a code.
+ */
+record CodeTable(int[] codes, int[] lengths) {
+
+    static final CodeTable EMPTY = new CodeTable(new int[256], new int[256]);
+
+    static CodeTable of(int[] lengths) {
+        return new CodeTable(CanonicalCode.codes(lengths), lengths);
+    }
+
+    static CodeTable build(long[] frequencies, int maxCodeLength) {
+        return of(Huffman.buildCodeLengths(frequencies, maxCodeLength));
+    }
+
+    boolean isEmpty() {
+        return Arrays.stream(lengths).allMatch(length -> length == 0);
+    }
+
+    /**
+     * Coded size in bits of input with these byte counts, or {@link Long#MAX_VALUE} if a byte that
+     * occurs has no code.
+     */
+    long cost(long[] counts) {
+        long bits = 0;
+        for (int s = 0; s < counts.length; s++) {
+            if (counts[s] == 0) continue;
+            if (lengths[s] == 0) return Long.MAX_VALUE;
+            bits += counts[s] * lengths[s];
+        }
+        return bits;
+    }
+
+    /**
+     * Size in bytes of the table as written by {@link CanonicalCode#writeLengths}.
+     */
+    int tableSize() {
+        int size = 0;
+        int s = 0;
+        while (s < lengths.length) {
+            int run = 1;
+            while (s + run < lengths.length && run < 256 && lengths[s + run] == lengths[s]) run++;
+            size += 2;
+            s += run;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,31 @@
+package logic;
+
+/**
+ * Receives progress of a compression or extraction. Calls are serialized but may come from worker
+ * threads, so UI code has to hand them over to its own thread. {@link #progress} is rate limited by
+ * {@link CompressionMetrics}; implementations should return quickly and must not throw.
+ */
+public interface CompressionListener {
+
+    CompressionListener NONE = new CompressionListener() {
+    };
+
+    /**
+     * A sequential phase ({@link Phase#HISTOGRAM}, {@link Phase#TREE}, {@link Phase#ENCODE} or
+     * {@link Phase#DECODE}) has started.
+     */
+    default void phaseStarted(Phase phase, CompressionMetrics metrics) {
+    }
+
+    default void entryStarted(String name, CompressionMetrics metrics) {
+    }
+
+    default void progress(CompressionMetrics metrics) {
+    }
+
+    /**
+     * Called once when the operation ends, also after a failure.
+     */
+    default void finished(CompressionMetrics metrics) {
+    }
+}
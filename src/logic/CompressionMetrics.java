@@ -0,0 +1,146 @@
+package logic;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters of one compression or extraction. Coding threads add to them once per block and
+ * the listener is told at most every {@link #REPORT_INTERVAL_NANOS}, so the cost stays out of the
+ * per-symbol loops.
+ * <p>
+ * Byte counts are input and output of the operation: raw and compressed bytes when compressing,
+ * the other way round when extracting. Phase durations are summed over all threads, so with
+ * several workers they can add up to more than {@link #getElapsed()}.
+ */
+public final class CompressionMetrics {
+
+    static final long REPORT_INTERVAL_NANOS = 100_000_000L;
+
+    private final CompressionListener listener;
+    private final long startNanos = System.nanoTime();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+    private volatile long totalBytes = -1;
+    private volatile String currentEntry;
+    private volatile long endNanos;
+    private long lastReport = startNanos;
+
+    CompressionMetrics(CompressionListener listener) {
+        this.listener = listener == null ? CompressionListener.NONE : listener;
+    }
+
+    void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    synchronized void phaseStarted(Phase phase) {
+        listener.phaseStarted(phase, this);
+    }
+
+    synchronized void entryStarted(String name) {
+        currentEntry = name;
+        listener.entryStarted(name, this);
+    }
+
+    void addTime(Phase phase, long startNanos) {
+        phaseNanos.addAndGet(phase.ordinal(), System.nanoTime() - startNanos);
+    }
+
+    void addBytes(long in, long out) {
+        bytesIn.add(in);
+        bytesOut.add(out);
+        long now = System.nanoTime();
+        if (now - lastReport < REPORT_INTERVAL_NANOS) return;
+        synchronized (this) {
+            if (now - lastReport < REPORT_INTERVAL_NANOS) return;
+            lastReport = now;
+            listener.progress(this);
+        }
+    }
+
+    synchronized void finished() {
+        endNanos = System.nanoTime();
+        listener.finished(this);
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    /**
+     * Input bytes the whole operation will read, or -1 before that is known.
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public String getCurrentEntry() {
+        return currentEntry;
+    }
+
+    public Duration getDuration(Phase phase) {
+        return Duration.ofNanos(phaseNanos.get(phase.ordinal()));
+    }
+
+    public Duration getElapsed() {
+        long end = endNanos;
+        return Duration.ofNanos((end == 0 ? System.nanoTime() : end) - startNanos);
+    }
+
+    public boolean isFinished() {
+        return endNanos != 0;
+    }
+
+    /**
+     * Input bytes per second since the start.
+     */
+    public double getThroughput() {
+        long nanos = getElapsed().toNanos();
+        return nanos == 0 ? 0 : getBytesIn() * 1e9 / nanos;
+    }
+
+    /**
+     * Share of the input read so far, between 0 and 1, or -1 if the total is unknown.
+     */
+    public double getFraction() {
+        long total = totalBytes;
+        if (total < 0) return -1;
+        return total == 0 ? 1 : Math.min(1, (double) getBytesIn() / total);
+    }
+
+    /**
+     * Remaining time at the current throughput, or null while it cannot be estimated.
+     */
+    public Duration getEta() {
+        long total = totalBytes;
+        double throughput = getThroughput();
+        if (total < 0 || throughput <= 0) return null;
+        return Duration.ofMillis((long) (Math.max(0, total - getBytesIn()) * 1000 / throughput));
+    }
+
+    /**
+     * The counters under flat names, e.g. for a metrics exporter.
+     */
+    public Map<String, Number> toMap() {
+        Map<String, Number> map = new LinkedHashMap<>();
+        map.put("bytes_in", getBytesIn());
+        map.put("bytes_out", getBytesOut());
+        map.put("elapsed_ms", getElapsed().toMillis());
+        map.put("throughput_bytes_s", (long) getThroughput());
+        for (Phase phase : Phase.values()) {
+            long nanos = phaseNanos.get(phase.ordinal());
+            if (nanos > 0)
+                map.put(phase.name().toLowerCase(Locale.ROOT) + "_ms", nanos / 1_000_000);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,388 @@
+package logic;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+
+/**
+ * Reader, encoder and writer stages of one compress call. A reader on a virtual thread fills pooled
+ * block buffers from the inputs in order, checksums them and hands each block to the encoder pool;
+ * the calling thread writes the encoded blocks in input order, so entry offsets and seek indexes
+ * are known as it goes. Reading, encoding and writing overlap across entry boundaries, and the
+ * buffer pool bounds memory: the reader waits while every buffer is being encoded or written.
+ * <p>
+ * In solid mode, files of at most {@link ArchiveFormat#SOLID_MAX_ENTRY_SIZE} bytes are loaded
+ * whole, up to {@link #PREFETCH} ahead on virtual threads, and packed back to back into the blocks
+ * of a nameless group entry, which ends after {@link ArchiveFormat#SOLID_GROUP_BLOCKS} blocks or
+ * at the next larger file.
+ */
+final class CompressionPipeline {
+
+    static final int PREFETCH = 64;
+
+    /**
+     * One entry to compress; {@code entryCode} is called on the reader thread. Only inputs with a
+     * {@code file} can go into a solid group.
+     */
+    record Input(String name, Supplier<CodeTable> entryCode, Opener source, Path file) {
+    }
+
+    interface Opener {
+        BlockSource open() throws IOException;
+    }
+
+    /**
+     * Fills a block and returns the number of bytes read, less than a full block only at the end.
+     */
+    interface BlockSource extends Closeable {
+        int read(byte[] block) throws IOException;
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    interface Encoder {
+        EncodedBlock encode(byte[] block, int length, CodeTable entryCode) throws IOException;
+    }
+
+    private sealed interface Item permits Start, Block, Member, End, Failure, Done {
+    }
+
+    private record Start(String name, CodeTable entryCode) implements Item {
+    }
+
+    private record Block(Future<Coded> encoded, byte[] buffer) implements Item {
+    }
+
+    private record Coded(EncodedBlock block, int checksum) {
+    }
+
+    // an entry packed into the current solid group
+    private record Member(String name, long solidOffset, long size, int checksum) implements Item {
+    }
+
+    private record End(long size, int checksum) implements Item {
+    }
+
+    private record Failure(Exception error) implements Item {
+    }
+
+    private record Done() implements Item {
+    }
+
+    private final ExecutorService pool;
+    private final Encoder encoder;
+    private final int blockSize;
+    private final long indexInterval;
+    private final boolean solid;
+    private final BlockCipher cipher;
+    private final CompressionMetrics metrics;
+
+    private final int bufferCount;
+    private final BlockingQueue<byte[]> buffers;
+    private int allocated;
+    private final BlockingQueue<Item> queue = new LinkedBlockingQueue<>();
+    // local headers started so far; a block is encrypted with its header's ordinal and offset
+    private int headers;
+
+    // reader state of the open solid group, groupBlock is null when there is none; groupRaw is
+    // where groupBlock starts in the group's content
+    private byte[] groupBlock;
+    private int groupFill;
+    private long groupSize;
+    private int groupHeader;
+    private long groupRaw;
+
+    /**
+     * @param buffers blocks in flight between the reader and the writer, at least 1
+     */
+    CompressionPipeline(ExecutorService pool, Encoder encoder, int blockSize, int buffers, long indexInterval,
+                        boolean solid, BlockCipher cipher, CompressionMetrics metrics) {
+        this.pool = pool;
+        this.encoder = encoder;
+        this.blockSize = blockSize;
+        this.indexInterval = indexInterval;
+        this.solid = solid;
+        this.cipher = cipher;
+        this.metrics = metrics;
+        this.bufferCount = buffers;
+        this.buffers = new ArrayBlockingQueue<>(buffers);
+    }
+
+    static BlockSource open(Path file) throws IOException {
+        FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+        return new BlockSource() {
+            @Override
+            public int read(byte[] block) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(block);
+                while (buffer.hasRemaining()) {
+                    if (in.read(buffer) < 0) break;
+                }
+                return buffer.position();
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+
+    /**
+     * Compresses {@code inputs} to {@code dos}, which writes through {@code out}.
+     *
+     * @return the directory records of the written entries
+     */
+    List<ArchiveEntry> run(List<Input> inputs, DataOutputStream dos, ChannelOutputStream out) throws IOException {
+        Thread reader = Thread.ofVirtual().name("iak-reader").start(() -> read(inputs));
+        List<ArchiveEntry> entries = new ArrayList<>();
+        try {
+            String name = null;
+            long fileStart = 0;
+            SeekIndex.Builder index = null;
+            List<Member> members = new ArrayList<>();
+            while (true) {
+                Item item = take();
+                if (item instanceof Start start) {
+                    name = start.name();
+                    fileStart = out.position();
+                    index = new SeekIndex.Builder(indexInterval);
+                    if (!name.isEmpty()) metrics.entryStarted(name);
+                    writeLocalHeader(dos, name, start.entryCode());
+                } else if (item instanceof Block block) {
+                    Coded coded = Futures.await(block.encoded());
+                    index.block(out.position(), coded.block().rawLength());
+                    writeBlock(dos, coded);
+                    // a stored block may share the buffer until it is written
+                    buffers.add(block.buffer());
+                } else if (item instanceof Member member) {
+                    metrics.entryStarted(member.name());
+                    members.add(member);
+                } else if (item instanceof End end) {
+                    dos.writeInt(0);                    // end of entry      -- 4 Bytes
+                    if (name.isEmpty()) {
+                        addMembers(entries, members, fileStart, out.position() - fileStart, end.size(), cipher != null);
+                        members.clear();
+                    } else {
+                        entries.add(new ArchiveEntry(name, fileStart, out.position() - fileStart, end.size(),
+                                cipher == null ? end.checksum() : 0, index.build(), -1));
+                    }
+                } else if (item instanceof Failure failure) {
+                    if (failure.error() instanceof IOException e) throw e;
+                    throw (RuntimeException) failure.error();
+                } else {
+                    return entries;
+                }
+            }
+        } finally {
+            reader.interrupt();
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (Item item : queue) {
+                if (item instanceof Block block) block.encoded().cancel(true);
+            }
+        }
+    }
+
+    // members are charged the group's bytes in proportion to their size
+    private static void addMembers(List<ArchiveEntry> entries, List<Member> members, long groupStart,
+                                   long groupBytes, long groupSize, boolean encrypted) {
+        long total = Math.max(groupSize, 1);
+        long charged = 0;
+        for (Member member : members) {
+            long end = groupBytes * (member.solidOffset() + member.size()) / total;
+            entries.add(new ArchiveEntry(member.name(), groupStart, end - charged, member.size(),
+                    encrypted ? 0 : member.checksum(), SeekIndex.NONE, member.solidOffset()));
+            charged = end;
+        }
+    }
+
+    private Item take() throws IOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private void read(List<Input> inputs) {
+        ExecutorService loader = solid ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        Deque<Future<byte[]>> loaded = new ArrayDeque<>();
+        try {
+            int next = 0;
+            for (Input input : inputs) {
+                if (solid) {
+                    for (; next < inputs.size() && loaded.size() < PREFETCH; next++) {
+                        Path file = inputs.get(next).file();
+                        loaded.add(loader.submit(() -> load(file)));
+                    }
+                    long start = System.nanoTime();
+                    byte[] content = Futures.await(loaded.poll());
+                    metrics.addTime(Phase.READ, start);
+                    if (content != null) {
+                        pack(input.name(), content);
+                        continue;
+                    }
+                }
+                closeGroup();
+                CodeTable entryCode = input.entryCode().get();
+                queue.put(new Start(input.name(), entryCode));
+                int header = headers++;
+                long size = 0;
+                CRC32C checksum = new CRC32C();
+                try (BlockSource source = input.source().open()) {
+                    while (true) {
+                        byte[] block = takeBuffer();
+                        long start = System.nanoTime();
+                        int length = source.read(block);
+                        metrics.addTime(Phase.READ, start);
+                        if (length == 0) {
+                            buffers.add(block);
+                            break;
+                        }
+                        long raw = size;
+                        size += length;
+                        checksum.update(block, 0, length);
+                        queue.put(new Block(pool.submit(() -> encode(block, length, entryCode, header, raw)), block));
+                        if (length < blockSize) break;
+                    }
+                }
+                queue.put(new End(size, (int) checksum.getValue()));
+            }
+            closeGroup();
+            queue.put(new Done());
+        } catch (InterruptedException e) {
+            // the writer gave up
+        } catch (IOException | RuntimeException e) {
+            queue.add(new Failure(e));
+        } finally {
+            if (loader != null) {
+                loaded.forEach(f -> f.cancel(true));
+                loader.shutdownNow();
+            }
+        }
+    }
+
+    // the whole content of a file small enough for a solid group, otherwise null
+    private static byte[] load(Path file) throws IOException {
+        if (file == null || Files.size(file) > ArchiveFormat.SOLID_MAX_ENTRY_SIZE) return null;
+        return Files.readAllBytes(file);
+    }
+
+    private void pack(String name, byte[] content) throws InterruptedException {
+        if (groupBlock == null) {
+            queue.put(new Start("", CodeTable.EMPTY));
+            groupHeader = headers++;
+            groupBlock = takeBuffer();
+            groupFill = 0;
+            groupSize = 0;
+            groupRaw = 0;
+        }
+        CRC32C checksum = new CRC32C();
+        checksum.update(content);
+        queue.put(new Member(name, groupSize, content.length, (int) checksum.getValue()));
+        for (int copied = 0; copied < content.length; ) {
+            if (groupFill == blockSize) {
+                submitGroupBlock();
+                groupBlock = takeBuffer();
+                groupFill = 0;
+            }
+            int n = Math.min(content.length - copied, blockSize - groupFill);
+            System.arraycopy(content, copied, groupBlock, groupFill, n);
+            groupFill += n;
+            copied += n;
+        }
+        groupSize += content.length;
+        if (groupSize >= (long) ArchiveFormat.SOLID_GROUP_BLOCKS * blockSize) closeGroup();
+    }
+
+    private void submitGroupBlock() throws InterruptedException {
+        byte[] block = groupBlock;
+        int length = groupFill;
+        int header = groupHeader;
+        long raw = groupRaw;
+        groupRaw += length;
+        queue.put(new Block(pool.submit(() -> encode(block, length, CodeTable.EMPTY, header, raw)), block));
+    }
+
+    private void closeGroup() throws InterruptedException {
+        if (groupBlock == null) return;
+        if (groupFill > 0) {
+            submitGroupBlock();
+        } else {
+            buffers.add(groupBlock);
+        }
+        groupBlock = null;
+        queue.put(new End(groupSize, 0));
+    }
+
+    // buffers are allocated on first use, so small inputs do not pay for the whole pool
+    private byte[] takeBuffer() throws InterruptedException {
+        byte[] buffer = buffers.poll();
+        if (buffer != null) return buffer;
+        if (allocated < bufferCount) {
+            allocated++;
+            return new byte[blockSize];
+        }
+        return buffers.take();
+    }
+
+    private static void writeLocalHeader(DataOutputStream dos, String name, CodeTable entryCode) throws IOException {
+        byte[] fileNameBytes = name.getBytes(StandardCharsets.UTF_8);
+        dos.writeShort(fileNameBytes.length);           // y= name length    -- 2 Bytes
+        dos.write(fileNameBytes);                       // name              -- y Bytes
+        CanonicalCode.writeLengths(dos, entryCode.lengths()); // entry code lengths -- 2..512 Bytes
+    }
+
+    // runs on the encoder pool, so blocks are checksummed and encrypted in parallel
+    private Coded encode(byte[] block, int length, CodeTable entryCode, int header, long raw) throws IOException {
+        if (cipher == null) {
+            CRC32C checksum = new CRC32C();
+            checksum.update(block, 0, length);
+            return new Coded(encoder.encode(block, length, entryCode), (int) checksum.getValue());
+        }
+        EncodedBlock encoded = encoder.encode(block, length, entryCode);
+        long start = System.nanoTime();
+        byte[] sealed = cipher.seal(header, raw, encoded.data(),
+                BlockCipher.aad(encoded.rawLength(), encoded.method(), encoded.padBits()));
+        metrics.addTime(Phase.CIPHER, start);
+        return new Coded(new EncodedBlock(encoded.rawLength(), encoded.method(), sealed, encoded.padBits()), 0);
+    }
+
+    private void writeBlock(DataOutputStream dos, Coded coded) throws IOException {
+        EncodedBlock block = coded.block();
+        long start = System.nanoTime();
+        dos.writeInt(block.rawLength());                // raw length        -- 4 Bytes
+        dos.writeByte(block.method());                  // method            -- 1 Byte
+        dos.writeInt(block.data().length);              // z= data length    -- 4 Bytes
+        dos.writeByte(block.padBits());                 // padBits           -- 1 Byte
+        dos.writeInt(coded.checksum());                 // checksum          -- 4 Bytes
+        dos.write(block.data());                        // data              -- z Bytes
+        metrics.addTime(Phase.WRITE, start);
+        metrics.addBytes(block.rawLength(), ArchiveFormat.BLOCK_HEADER_SIZE + block.data().length);
+    }
+}
@@ -0,0 +1,406 @@
+package logic;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lookup-table Huffman decoder.
+ * <p>
+ * The root table is indexed by the next {@link #ROOT_BITS} bits of the stream. An entry either
+ * holds one or two complete symbols, or links to a secondary table that resolves the remaining
+ * bits of a longer code. Secondary tables link further for very long codes, so any code length
+ * the tree can produce is supported.
+ */
+public class DecodeTable {
+
+    static final int ROOT_BITS = 11;
+    static final int SUB_BITS = 8;
+
+    // leaf entry:  sym0 (9) | sym1 (9) | total bits (5) | sym0 bits (5) | symbol count (2)
+    // link entry:  table offset (20) | table bits (4) | symbol count = 0
+    static final int MAX_SYMBOLS = 1 << 9;
+    private static final int INVALID = -1;
+
+    private final int[] table;
+    private final int rootBits;
+    private final int maxLength;
+
+    private DecodeTable(int[] table, int rootBits, int maxLength) {
+        this.table = table;
+        this.rootBits = rootBits;
+        this.maxLength = maxLength;
+    }
+
+    public static DecodeTable fromTree(Node root) {
+        List<long[]> leaves = new ArrayList<>();
+        collectLeaves(root, 0, 0, leaves);
+        return build(leaves);
+    }
+
+    // a tree may hold the same symbol twice (the dummy leaf added for single-symbol inputs)
+    private static void collectLeaves(Node node, long code, int length, List<long[]> leaves) {
+        if (node instanceof Leaf) {
+            leaves.add(new long[]{((Leaf) node).getCharacter() & 0xFF, code, Math.max(length, 1)});
+            return;
+        }
+        collectLeaves(node.getLeft(), code << 1, length + 1, leaves);
+        collectLeaves(node.getRight(), (code << 1) | 1, length + 1, leaves);
+    }
+
+    /**
+     * Builds a table from explicit codes; {@code lengths[s] == 0} marks a symbol that never occurs.
+     * Alphabets of up to {@link #MAX_SYMBOLS} symbols are supported.
+     */
+    public static DecodeTable fromCodes(long[] codes, int[] lengths) {
+        if (lengths.length > MAX_SYMBOLS)
+            throw new IllegalArgumentException("alphabet of " + lengths.length + " symbols is too large");
+        List<long[]> leaves = new ArrayList<>();
+        for (int s = 0; s < lengths.length; s++) {
+            if (lengths[s] > 0)
+                leaves.add(new long[]{s, codes[s], lengths[s]});
+        }
+        return build(leaves);
+    }
+
+    /**
+     * Builds a table for the canonical code described by {@code lengths}.
+     */
+    public static DecodeTable fromCodeLengths(int[] lengths) {
+        int[] codes = CanonicalCode.codes(lengths);
+        long[] longCodes = new long[lengths.length];
+        for (int s = 0; s < lengths.length; s++) longCodes[s] = codes[s] & 0xFFFFFFFFL;
+        return fromCodes(longCodes, lengths);
+    }
+
+    /**
+     * Like {@link #fromCodeLengths}, but returns null when no symbol has a code.
+     */
+    static DecodeTable fromCodeLengthsOrNull(int[] lengths) {
+        for (int length : lengths) {
+            if (length > 0) return fromCodeLengths(lengths);
+        }
+        return null;
+    }
+
+    // each leaf is {symbol, code, length}
+    private static DecodeTable build(List<long[]> leaves) {
+        int maxLength = 0;
+        for (long[] leaf : leaves) maxLength = Math.max(maxLength, (int) leaf[2]);
+        if (leaves.isEmpty())
+            throw new IllegalArgumentException("no symbols");
+        if (maxLength > 64)
+            throw new IllegalArgumentException("code length " + maxLength + " exceeds 64 bits");
+
+        int rootBits = Math.min(maxLength, ROOT_BITS);
+        Builder builder = new Builder();
+        builder.build(leaves, 0, rootBits);
+        int[] table = Arrays.copyOf(builder.table, builder.size);
+        pairSymbols(table, rootBits);
+        return new DecodeTable(table, rootBits, maxLength);
+    }
+
+    private static final class Builder {
+        private int[] table = new int[1 << ROOT_BITS];
+        private int size;
+
+        int build(List<long[]> leaves, int depth, int bits) {
+            int offset = size;
+            int entries = 1 << bits;
+            if (offset + entries > table.length)
+                table = Arrays.copyOf(table, Math.max(table.length * 2, offset + entries));
+            Arrays.fill(table, offset, offset + entries, INVALID);
+            size += entries;
+
+            List<List<long[]>> groups = new ArrayList<>();
+            for (int i = 0; i < entries; i++) groups.add(null);
+
+            for (long[] leaf : leaves) {
+                int rest = (int) leaf[2] - depth;
+                long tail = rest == 64 ? leaf[1] : leaf[1] & ((1L << rest) - 1);
+                if (rest <= bits) {
+                    int first = (int) (tail << (bits - rest));
+                    int entry = leaf((int) leaf[0], 0, rest, rest, 1);
+                    Arrays.fill(table, offset + first, offset + first + (1 << (bits - rest)), entry);
+                } else {
+                    int prefix = (int) (tail >>> (rest - bits));
+                    if (groups.get(prefix) == null) groups.set(prefix, new ArrayList<>());
+                    groups.get(prefix).add(leaf);
+                }
+            }
+
+            for (int prefix = 0; prefix < entries; prefix++) {
+                List<long[]> group = groups.get(prefix);
+                if (group == null) continue;
+                int longest = 0;
+                for (long[] leaf : group) longest = Math.max(longest, (int) leaf[2] - depth - bits);
+                int subBits = Math.min(longest, SUB_BITS);
+                int subOffset = build(group, depth + bits, subBits);
+                if (subOffset >= 1 << 20)
+                    throw new IllegalArgumentException("decode table too large");
+                table[offset + prefix] = subOffset | (subBits << 20);
+            }
+            return offset;
+        }
+    }
+
+    // Upgrades root entries whose code leaves room for a second complete code in the same lookup.
+    private static void pairSymbols(int[] table, int rootBits) {
+        int size = 1 << rootBits;
+        int[] single = Arrays.copyOf(table, size);
+        for (int i = 0; i < size; i++) {
+            int e = single[i];
+            if (count(e) != 1) continue;
+            int first = totalBits(e);
+            if (first >= rootBits) continue;
+            int next = single[(i << first) & (size - 1)];
+            if (count(next) != 1 || totalBits(next) > rootBits - first) continue;
+            table[i] = leaf(e & 0x1FF, next & 0x1FF, first + totalBits(next), first, 2);
+        }
+    }
+
+    private static int leaf(int sym0, int sym1, int total, int firstBits, int count) {
+        return sym0 | (sym1 << 9) | (total << 18) | (firstBits << 23) | (count << 28);
+    }
+
+    private static int count(int e) {
+        return e == INVALID ? -1 : (e >>> 28) & 3;
+    }
+
+    private static int totalBits(int e) {
+        return (e >>> 18) & 0x1F;
+    }
+
+    private static int firstBits(int e) {
+        return (e >>> 23) & 0x1F;
+    }
+
+    /**
+     * Decodes {@code totalBits} bits starting at the position of {@code in} and writes the symbols
+     * to {@code out}.
+     *
+     * @return the number of bytes decoded
+     */
+    public long decode(ByteBuffer in, long totalBits, OutputStream out) throws IOException {
+        Cursor cursor = new Cursor(in, totalBits);
+        byte[] outBuf = new byte[1 << 16];
+        long decoded = 0;
+        while (cursor.remaining > 0) {
+            int n = fill(cursor, outBuf, 0, outBuf.length);
+            out.write(outBuf, 0, n);
+            decoded += n;
+        }
+        return decoded;
+    }
+
+    /**
+     * Decodes {@code totalBits} bits into {@code out[offset, offset + length)}.
+     *
+     * @return the number of bytes decoded
+     * @throws IOException if the stream holds more symbols than fit or an invalid code
+     */
+    public int decode(ByteBuffer in, long totalBits, byte[] out, int offset, int length) throws IOException {
+        Cursor cursor = new Cursor(in, totalBits);
+        int end = fill(cursor, out, offset, offset + length);
+        if (cursor.remaining > 0)
+            throw new IOException("corrupted data: more symbols than expected");
+        return end - offset;
+    }
+
+    /**
+     * Decodes the next symbol, ignoring any second symbol paired with it.
+     *
+     * @throws IOException on a bit pattern that is not a code
+     */
+    int decodeSymbol(BitReader reader) throws IOException {
+        reader.refill();
+        int e = table[(int) (reader.bits >>> (64 - rootBits))];
+        if (count(e) > 0) {
+            reader.skip(firstBits(e));
+            return e & 0x1FF;
+        }
+        return longSymbol(reader, e);
+    }
+
+    // resolves a root entry that is not a leaf through the secondary tables
+    private int longSymbol(BitReader reader, int e) throws IOException {
+        int count = count(e);
+        int bits = rootBits;
+        while (count == 0) {
+            reader.skip(bits);
+            reader.refill();
+            bits = (e >>> 20) & 0xF;
+            e = table[(e & 0xFFFFF) + (int) (reader.bits >>> (64 - bits))];
+            count = count(e);
+        }
+        if (count < 0)
+            throw new IOException("corrupted data: invalid Huffman code");
+        reader.skip(totalBits(e));
+        return e & 0x1FF;
+    }
+
+    /**
+     * Decodes one or two symbols to {@code out[pos]}, relying on the caller's refill and on
+     * {@code out[pos + 1]} being free to overwrite.
+     *
+     * @return the new output position
+     */
+    private int decodePair(BitReader reader, byte[] out, int pos) throws IOException {
+        int e = table[(int) (reader.bits >>> (64 - rootBits))];
+        int count = count(e);
+        if (count > 0) {
+            out[pos] = (byte) e;
+            out[pos + 1] = (byte) (e >>> 9);
+            reader.skip(totalBits(e));
+            return pos + count;
+        }
+        out[pos] = (byte) longSymbol(reader, e);
+        return pos + 1;
+    }
+
+    /**
+     * Decodes {@code out.length} symbols from four streams, stream k holding the k-th quarter of
+     * the output (see {@link #quarter}). The streams are independent, so the four lookups of a
+     * round do not wait on each other and one refill per stream covers several rounds.
+     *
+     * @throws IOException if a stream holds an invalid code or runs past its end
+     */
+    public void decodeInterleaved(ByteBuffer[] streams, byte[] out) throws IOException {
+        if (streams.length != 4)
+            throw new IllegalArgumentException("expected 4 streams, got " + streams.length);
+        BitReader r0 = new BitReader(streams[0]);
+        BitReader r1 = new BitReader(streams[1]);
+        BitReader r2 = new BitReader(streams[2]);
+        BitReader r3 = new BitReader(streams[3]);
+        int n = out.length;
+        int quarter = quarter(n);
+        int p0 = 0;
+        int p1 = Math.min(quarter, n);
+        int p2 = Math.min(2 * quarter, n);
+        int p3 = Math.min(3 * quarter, n);
+        int end0 = p1;
+        int end1 = p2;
+        int end2 = p3;
+
+        // lookups per stream that a refill of 57 bits always covers, each writing up to 2 bytes
+        int rounds = Math.max(1, 57 / maxLength);
+        int room = 2 * rounds;
+        while (p3 + room <= n && p2 + room <= end2 && p1 + room <= end1 && p0 + room <= end0) {
+            r0.refill();
+            r1.refill();
+            r2.refill();
+            r3.refill();
+            for (int k = 0; k < rounds; k++) {
+                p0 = decodePair(r0, out, p0);
+                p1 = decodePair(r1, out, p1);
+                p2 = decodePair(r2, out, p2);
+                p3 = decodePair(r3, out, p3);
+            }
+        }
+        while (p0 < end0) out[p0++] = (byte) decodeSymbol(r0);
+        while (p1 < end1) out[p1++] = (byte) decodeSymbol(r1);
+        while (p2 < end2) out[p2++] = (byte) decodeSymbol(r2);
+        while (p3 < n) out[p3++] = (byte) decodeSymbol(r3);
+
+        checkEnd(r0, streams[0], 0);
+        checkEnd(r1, streams[1], 1);
+        checkEnd(r2, streams[2], 2);
+        checkEnd(r3, streams[3], 3);
+    }
+
+    /**
+     * Symbols in each of the first three streams of a {@code length}-byte block; the fourth holds
+     * the rest.
+     */
+    public static int quarter(int length) {
+        return (length + 3) / 4;
+    }
+
+    private static void checkEnd(BitReader reader, ByteBuffer stream, int index) throws IOException {
+        if (reader.position() > stream.remaining() * 8L)
+            throw new IOException("corrupted data: stream " + index + " ended early");
+    }
+
+    /**
+     * Starts an incremental decode of {@code totalBits} bits from the position of {@code in}, see
+     * {@link #decode(Cursor, byte[], int, int)}.
+     */
+    Cursor cursor(ByteBuffer in, long totalBits) {
+        return new Cursor(in, totalBits);
+    }
+
+    /**
+     * Decodes the next bytes of the cursor's stream into {@code out[offset, offset + length)}.
+     *
+     * @return the number of bytes decoded, 0 once the stream is exhausted
+     */
+    int decode(Cursor cursor, byte[] out, int offset, int length) throws IOException {
+        return fill(cursor, out, offset, offset + length) - offset;
+    }
+
+    static final class Cursor {
+        private final BitReader reader;
+        private long remaining;
+
+        Cursor(ByteBuffer in, long totalBits) {
+            this.reader = new BitReader(in);
+            this.remaining = totalBits;
+        }
+    }
+
+    // decodes until the stream or out[pos, end) is exhausted; returns the new output position
+    private int fill(Cursor cursor, byte[] out, int pos, int end) throws IOException {
+        BitReader reader = cursor.reader;
+        long remaining = cursor.remaining;
+        int rootShift = 64 - rootBits;
+
+        while (remaining > 0 && pos < end) {
+            reader.refill();
+            int e = table[(int) (reader.bits >>> rootShift)];
+            int count = count(e);
+            if (count > 0) {
+                int bits = totalBits(e);
+                if (count == 2 && (bits > remaining || pos + 1 == end)) {
+                    // only the first symbol of the pair is inside the stream or fits the output
+                    bits = firstBits(e);
+                    count = 1;
+                }
+                if (bits > remaining) {
+                    remaining = 0;
+                    break;
+                }
+                out[pos++] = (byte) e;
+                if (count == 2) out[pos++] = (byte) (e >>> 9);
+                reader.skip(bits);
+                remaining -= bits;
+            } else {
+                long consumed = 0;
+                int bits = rootBits;
+                while (count == 0) {
+                    reader.skip(bits);
+                    consumed += bits;
+                    reader.refill();
+                    bits = (e >>> 20) & 0xF;
+                    e = table[(e & 0xFFFFF) + (int) (reader.bits >>> (64 - bits))];
+                    count = count(e);
+                }
+                if (count < 0)
+                    throw new IOException("corrupted data: invalid Huffman code");
+                bits = totalBits(e);
+                consumed += bits;
+                if (consumed > remaining) {
+                    remaining = 0;
+                    break;
+                }
+                out[pos++] = (byte) e;
+                reader.skip(bits);
+                remaining -= consumed;
+            }
+        }
+        cursor.remaining = remaining;
+        return pos;
+    }
+}
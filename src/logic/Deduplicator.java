@@ -0,0 +1,55 @@
+package logic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds input files with identical content. Files are grouped by size and content hash (see
+ * {@link ByteHistogram#contentHash}), and a candidate is compared byte for byte with the earlier
+ * files of its group, so a hash collision never makes two different files one.
+ */
+final class Deduplicator {
+
+    private record Key(long size, long hash) {
+    }
+
+    private Deduplicator() {
+    }
+
+    /**
+     * @param hashes the content hash of every file, or null to hash only the files whose size
+     *               another file shares
+     * @return for every file, the index of the first earlier file with the same content, or -1
+     */
+    static int[] find(List<File> files, long[] hashes) throws IOException {
+        int[] duplicateOf = new int[files.size()];
+        Arrays.fill(duplicateOf, -1);
+        long[] sizes = new long[files.size()];
+        Map<Long, Integer> sizeCounts = new HashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            sizes[i] = files.get(i).length();
+            sizeCounts.merge(sizes[i], 1, Integer::sum);
+        }
+
+        Map<Key, List<Integer>> candidates = new HashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            if (sizeCounts.get(sizes[i]) < 2) continue;
+            long hash = hashes != null ? hashes[i] : ByteHistogram.countFile(files.get(i)).contentHash();
+            List<Integer> earlier = candidates.computeIfAbsent(new Key(sizes[i], hash), k -> new ArrayList<>());
+            for (int first : earlier) {
+                if (Files.mismatch(files.get(first).toPath(), files.get(i).toPath()) == -1) {
+                    duplicateOf[i] = first;
+                    break;
+                }
+            }
+            if (duplicateOf[i] < 0) earlier.add(i);
+        }
+        return duplicateOf;
+    }
+}
@@ -0,0 +1,16 @@
+package logic;
+
+import java.util.Arrays;
+
+/**
+ * One independently coded block of an entry: {@code rawLength} input bytes packed into
+ * {@code data} with {@code method}. The last byte of Huffman coded data carries {@code padBits}
+ * bits of padding.
+ */
+record EncodedBlock(int rawLength, int method, byte[] data, int padBits) {
+
+    static EncodedBlock stored(byte[] block, int length) {
+        byte[] data = length == block.length ? block : Arrays.copyOf(block, length);
+        return new EncodedBlock(length, ArchiveFormat.METHOD_STORED, data, 0);
+    }
+}
@@ -0,0 +1,196 @@
+package logic;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.CRC32C;
+
+/**
+ * Sequential view of one archived entry that decodes only as far as it is read. A version 2
+ * entry is decoded one block at a time on the reading thread; a version 1 entry, a single bit
+ * stream, {@link #LEGACY_BUFFER_SIZE} bytes at a time. When the end is reached the content is
+ * checked against the directory's size and, unless the channel was moved with {@link #seek}, its
+ * checksum. An entry in a solid group is read from its group's blocks, starting at its
+ * solidOffset and stopping after its size.
+ */
+final class EntryChannel implements ReadableByteChannel {
+
+    static final int LEGACY_BUFFER_SIZE = 1 << 16;
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final ArchiveReader reader;
+    private final ArchiveEntry entry;
+    private final Closeable owner;
+    private final CompressionMetrics metrics;
+    private final CRC32C checksum = new CRC32C();
+    // the entry's range of its group's content; a regular entry runs to its last block
+    private final long base;
+    private final long limit;
+    // uncompressed offset of the next byte read, counted from the start of the group
+    private long position;
+    private boolean verify = true;
+    private boolean open = true;
+    private boolean ended;
+
+    private ByteBuffer current = EMPTY;
+    // version 2: the entry's local header, with its own table and first block, and the next block
+    // header (-1 after the last block) with the uncompressed offset that block starts at
+    private ArchiveReader.LocalHeader header;
+    private long nextBlock;
+    private long nextRaw;
+    // version 1
+    private ArchiveReader.LegacyEntry legacy;
+    private DecodeTable.Cursor cursor;
+    private byte[] legacyBuffer;
+
+    /**
+     * @param owner closed with this channel, or null
+     */
+    EntryChannel(ArchiveReader reader, ArchiveEntry entry, Closeable owner) throws IOException {
+        this(reader, entry, owner, new CompressionMetrics(null));
+    }
+
+    EntryChannel(ArchiveReader reader, ArchiveEntry entry, Closeable owner, CompressionMetrics metrics)
+            throws IOException {
+        this.reader = reader;
+        this.entry = entry;
+        this.owner = owner;
+        this.metrics = metrics;
+        base = entry.isSolid() ? entry.solidOffset() : 0;
+        limit = entry.isSolid() ? base + entry.size() : Long.MAX_VALUE;
+        if (reader.version() == ArchiveFormat.VERSION_1) {
+            legacy = reader.legacyEntry(entry.offset());
+            legacyBuffer = new byte[LEGACY_BUFFER_SIZE];
+            restartLegacy();
+        } else {
+            header = reader.localHeader(entry.offset());
+            nextBlock = header.firstBlock();
+            if (base > 0) move(base);
+        }
+    }
+
+    private void restartLegacy() {
+        ByteBuffer data = legacy.data();
+        cursor = reader.decodeTable().cursor(data, data.remaining() * 8L - legacy.padBits());
+        current = EMPTY;
+        position = 0;
+    }
+
+    /**
+     * Moves to uncompressed offset {@code offset}. A version 2 entry starts over from the last
+     * checkpoint of its {@link SeekIndex} before the offset (or from the next block, if that is
+     * closer) and skips whole blocks by their headers, so only the block holding the offset is
+     * decoded. A version 1 entry has to be decoded up to the offset. Seeking past the end leaves
+     * the channel at its end.
+     */
+    void seek(long offset) throws IOException {
+        if (!open) throw new ClosedChannelException();
+        if (offset < 0)
+            throw new IllegalArgumentException("negative offset " + offset);
+        verify = false;
+        move(Math.min(base + offset, limit));
+    }
+
+    private void move(long offset) throws IOException {
+        if (offset < position || offset - position > current.remaining()) {
+            if (legacy == null) {
+                skipBlocks(offset);
+            } else if (offset < position) {
+                restartLegacy();
+            }
+        }
+        while (position < offset) {
+            if (!current.hasRemaining() && !advance()) return;
+            int n = (int) Math.min(current.remaining(), offset - position);
+            current.position(current.position() + n);
+            position += n;
+        }
+    }
+
+    // leaves current empty and nextBlock at the block that holds offset, without decoding
+    private void skipBlocks(long offset) throws IOException {
+        SeekIndex index = entry.index();
+        int i = index.floor(offset);
+        long raw = i < 0 ? 0 : index.rawOffsets()[i];
+        long blockStart = i < 0 ? header.firstBlock() : index.blockOffsets()[i];
+        if (nextBlock >= 0 && nextRaw >= raw && nextRaw <= offset) {
+            raw = nextRaw;
+            blockStart = nextBlock;
+        }
+        ArchiveReader.Block block;
+        while ((block = reader.block(blockStart)) != null && raw + block.rawLength() <= offset) {
+            raw += block.rawLength();
+            blockStart = block.next();
+        }
+        current = EMPTY;
+        position = raw;
+        nextRaw = raw;
+        nextBlock = block == null ? -1 : blockStart;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!open) throw new ClosedChannelException();
+        if (!dst.hasRemaining()) return 0;
+        while (position >= limit || !current.hasRemaining()) {
+            if (position >= limit || !advance()) {
+                end();
+                return -1;
+            }
+        }
+        int n = (int) Math.min(Math.min(dst.remaining(), current.remaining()), limit - position);
+        ByteBuffer chunk = current.slice(current.position(), n);
+        dst.put(chunk.duplicate());
+        if (verify) checksum.update(chunk);
+        current.position(current.position() + n);
+        position += n;
+        return n;
+    }
+
+    // decodes the next block into current; false at the end of the entry
+    private boolean advance() throws IOException {
+        if (cursor != null) {
+            int n = reader.decodeTable().decode(cursor, legacyBuffer, 0, legacyBuffer.length);
+            current = ByteBuffer.wrap(legacyBuffer, 0, n);
+            return n > 0;
+        }
+        if (nextBlock < 0) return false;
+        ArchiveReader.Block block = reader.block(nextBlock);
+        if (block == null) {
+            nextBlock = -1;
+            return false;
+        }
+        nextBlock = block.next();
+        long raw = nextRaw;
+        nextRaw += block.rawLength();
+        current = reader.decodeBlock(block, header, raw, metrics);
+        return true;
+    }
+
+    // version 1 entries have no size or checksum to compare with; the size still catches an
+    // entry cut short after a seek
+    private void end() throws IOException {
+        if (ended || entry.size() < 0) return;
+        ended = true;
+        if (position - base != entry.size())
+            throw new IOException(entry.name() + ": expected " + entry.size() + " bytes, found " + (position - base));
+        if (verify && reader.hasEntryChecksums() && (int) checksum.getValue() != entry.checksum())
+            throw new IOException(entry.name() + ": checksum mismatch");
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!open) return;
+        open = false;
+        current = EMPTY;
+        if (owner != null) owner.close();
+    }
+}
@@ -0,0 +1,201 @@
+package logic;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Extracts archive entries on a bounded pool of worker threads. Entries are extracted by up to
+ * {@code threads} workers at once, and their blocks are decoded on a second pool of the same size,
+ * so an entry worker waiting for its blocks can never starve them. The selected entries of one
+ * solid group are extracted together by one worker that decodes only the group's blocks holding
+ * them, see {@link SolidGroupExtractor}. Names that share their data are decoded once and copied.
+ */
+public class ExtractionEngine {
+
+    // where an entry's data lies; deduplicated entries share one, while an empty solid entry
+    // starts where the next one does
+    private record Location(long offset, long solidOffset, long size) {
+    }
+
+    private final int threads;
+    private final boolean virtualThreads;
+    private final CompressionListener listener;
+
+    public ExtractionEngine(int threads, boolean virtualThreads) {
+        this(threads, virtualThreads, CompressionListener.NONE);
+    }
+
+    public ExtractionEngine(int threads, boolean virtualThreads, CompressionListener listener) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1");
+        this.threads = threads;
+        this.virtualThreads = virtualThreads;
+        this.listener = listener;
+    }
+
+    /**
+     * Extracts {@code names} (every entry when null) from {@code encodedFile} into
+     * {@code decodedOutputPath}. The future fails only if the archive cannot be opened, e.g. with a
+     * {@link WrongPasswordException}; failures of single entries are reported in the result.
+     */
+    public CompletableFuture<ExtractionResult> extract(File encodedFile, String decodedOutputPath, String password,
+                                                       Collection<String> names) {
+        return run(encodedFile, Objects.requireNonNull(decodedOutputPath), password, names);
+    }
+
+    /**
+     * Decodes {@code names} (every entry when null) like {@link #extract}, but writes nothing: the
+     * decoded bytes are only checked against the block and entry checksums. Version 1 archives have
+     * no checksums and are only decoded.
+     */
+    public CompletableFuture<ExtractionResult> verify(File encodedFile, String password, Collection<String> names) {
+        return run(encodedFile, null, password, names);
+    }
+
+    private CompletableFuture<ExtractionResult> run(File encodedFile, String decodedOutputPath, String password,
+                                                    Collection<String> names) {
+        long start = System.nanoTime();
+        CompressionMetrics metrics = new CompressionMetrics(listener);
+        ArchiveReader reader;
+        List<ArchiveEntry> entries;
+        try {
+            reader = ArchiveReader.open(encodedFile, password);
+            entries = reader.entries();
+        } catch (IOException e) {
+            metrics.finished();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        ExecutorService entryPool = newPool("extract-entry");
+        ExecutorService blockPool = newPool("extract-block");
+
+        Map<String, ArchiveEntry> byName = new LinkedHashMap<>();
+        for (ArchiveEntry entry : entries) {
+            byName.putIfAbsent(entry.name(), entry);
+        }
+
+        List<CompletableFuture<ExtractionResult.EntryResult>> results = new ArrayList<>();
+        Collection<String> selected = names == null ? byName.keySet() : names;
+        long totalBytes = 0;
+        for (String name : selected) {
+            ArchiveEntry entry = byName.get(name);
+            if (entry != null) totalBytes += entry.compressedSize();
+        }
+        metrics.setTotalBytes(totalBytes);
+        metrics.phaseStarted(Phase.DECODE);
+
+        // names that share data are decoded once, under the first of them, and copied
+        Map<Location, String> decodedAs = new HashMap<>();
+        Map<String, String> copyOf = new HashMap<>();
+        List<ArchiveEntry> decoded = new ArrayList<>();
+        Map<Long, List<ArchiveEntry>> groups = new HashMap<>();
+        for (String name : selected) {
+            ArchiveEntry entry = byName.get(name);
+            if (entry == null) continue;
+            String first = decodedAs.putIfAbsent(new Location(entry.offset(), entry.solidOffset(), entry.size()), name);
+            if (first != null) {
+                if (!first.equals(name)) copyOf.put(name, first);
+            } else {
+                decoded.add(entry);
+                if (entry.isSolid())
+                    groups.computeIfAbsent(entry.offset(), offset -> new ArrayList<>()).add(entry);
+            }
+        }
+        Map<Long, CompletableFuture<Map<String, ExtractionResult.EntryResult>>> groupResults = new HashMap<>();
+        groups.forEach((offset, members) -> groupResults.put(offset, CompletableFuture.supplyAsync(
+                () -> extractGroup(reader, offset, members, decodedOutputPath, blockPool, metrics), entryPool)));
+        Map<String, CompletableFuture<ExtractionResult.EntryResult>> decodedResults = new HashMap<>();
+        for (ArchiveEntry entry : decoded) {
+            decodedResults.put(entry.name(), entry.isSolid()
+                    ? groupResults.get(entry.offset()).thenApply(group -> group.get(entry.name()))
+                    : CompletableFuture.supplyAsync(
+                            () -> extractEntry(reader, entry, decodedOutputPath, blockPool, metrics), entryPool));
+        }
+
+        for (String name : selected) {
+            ArchiveEntry entry = byName.get(name);
+            if (entry == null) {
+                results.add(CompletableFuture.completedFuture(new ExtractionResult.EntryResult(
+                        name, 0, Duration.ZERO, new FileNotFoundException(name + " is not in the archive"))));
+            } else if (copyOf.containsKey(name)) {
+                results.add(decodedResults.get(copyOf.get(name)).thenApplyAsync(
+                        first -> copyEntry(first, entry, decodedOutputPath), entryPool));
+            } else {
+                results.add(decodedResults.get(name));
+            }
+        }
+
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> new ExtractionResult(results.stream().map(CompletableFuture::join).toList(),
+                        Duration.ofNanos(System.nanoTime() - start)))
+                .whenComplete((result, error) -> {
+                    entryPool.shutdown();
+                    blockPool.shutdown();
+                    metrics.finished();
+                    try {
+                        reader.close();
+                    } catch (IOException ignored) {
+                    }
+                });
+    }
+
+    private ExtractionResult.EntryResult extractEntry(ArchiveReader reader, ArchiveEntry entry, String decodedOutputPath,
+                                                      ExecutorService blockPool, CompressionMetrics metrics) {
+        long start = System.nanoTime();
+        try {
+            long bytes = reader.extract(entry, decodedOutputPath, blockPool, threads * 2, metrics);
+            return new ExtractionResult.EntryResult(entry.name(), bytes, Duration.ofNanos(System.nanoTime() - start), null);
+        } catch (Exception e) {
+            return new ExtractionResult.EntryResult(entry.name(), 0, Duration.ofNanos(System.nanoTime() - start), e);
+        }
+    }
+
+    private static ExtractionResult.EntryResult copyEntry(ExtractionResult.EntryResult first, ArchiveEntry entry,
+                                                          String decodedOutputPath) {
+        if (!first.isSuccessful())
+            return new ExtractionResult.EntryResult(entry.name(), 0, Duration.ZERO, first.error());
+        if (decodedOutputPath == null)
+            return new ExtractionResult.EntryResult(entry.name(), first.bytes(), Duration.ZERO, null);
+        long start = System.nanoTime();
+        try {
+            Files.copy(ArchiveFormat.outputPath(decodedOutputPath, first.name()),
+                    ArchiveFormat.outputPath(decodedOutputPath, entry.name()),
+                    StandardCopyOption.REPLACE_EXISTING);
+            return new ExtractionResult.EntryResult(entry.name(), first.bytes(), Duration.ofNanos(System.nanoTime() - start), null);
+        } catch (IOException e) {
+            return new ExtractionResult.EntryResult(entry.name(), 0, Duration.ofNanos(System.nanoTime() - start), e);
+        }
+    }
+
+    private Map<String, ExtractionResult.EntryResult> extractGroup(ArchiveReader reader, long groupStart,
+                                                                   List<ArchiveEntry> members, String decodedOutputPath,
+                                                                   ExecutorService blockPool, CompressionMetrics metrics) {
+        long start = System.nanoTime();
+        Map<String, Exception> failures = SolidGroupExtractor.extract(reader, groupStart, members, decodedOutputPath,
+                blockPool, threads * 2, metrics);
+        Duration duration = Duration.ofNanos(System.nanoTime() - start);
+        Map<String, ExtractionResult.EntryResult> results = new HashMap<>();
+        for (ArchiveEntry entry : members) {
+            Exception failure = failures.get(entry.name());
+            results.put(entry.name(), new ExtractionResult.EntryResult(entry.name(), failure == null ? entry.size() : 0,
+                    duration, failure));
+        }
+        return results;
+    }
+
+    private ExecutorService newPool(String name) {
+        ThreadFactory factory = virtualThreads
+                ? Thread.ofVirtual().name(name + "-", 0).factory()
+                : Thread.ofPlatform().name(name + "-", 0).daemon(true).factory();
+        return Executors.newFixedThreadPool(threads, factory);
+    }
+}
@@ -0,0 +1,32 @@
+package logic;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of an extraction: one result per requested entry, in request order.
+ */
+public record ExtractionResult(List<EntryResult> entries, Duration elapsed) {
+
+    /**
+     * @param error null when the entry was extracted successfully
+     */
+    public record EntryResult(String name, long bytes, Duration elapsed, Throwable error) {
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+    }
+
+    public List<EntryResult> failures() {
+        return entries.stream().filter(e -> !e.isSuccessful()).toList();
+    }
+
+    public boolean isSuccessful() {
+        return entries.stream().allMatch(EntryResult::isSuccessful);
+    }
+
+    public long totalBytes() {
+        return entries.stream().mapToLong(EntryResult::bytes).sum();
+    }
+}
@@ -1,343 +1,579 @@
 package logic;
 
-import javax.swing.*;
 import java.io.*;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.*;
 
 public class Huffman {
 
 
-    private Node root;
-    private Map<Byte, Integer> charFrequencies;
-    private Map<Byte, String> huffmanCodes = new HashMap<>();
-
+    private long[] charFrequencies;
+    private List<long[]> entryFrequencies;
+    private CodeTable archiveCode = CodeTable.EMPTY;
+    private TableScope tableScope = TableScope.AUTO;
+    private int maxCodeLength = CanonicalCode.DEFAULT_MAX_CODE_LENGTH;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int blockSize = ArchiveFormat.DEFAULT_BLOCK_SIZE;
+    private int level;
+    private int windowSize = Lz77.DEFAULT_WINDOW;
+    private boolean virtualThreads;
+    private boolean interleaved = true;
+    private long indexInterval = ArchiveFormat.DEFAULT_INDEX_INTERVAL;
+    private boolean solid;
+    private boolean deduplicate = true;
+    private CompressionListener listener = CompressionListener.NONE;
+
+
+    public int getParallelism() {
+        return parallelism;
+    }
 
-    public int compress(List<File> inputFiles, File compressedFile, String password) throws IOException {
-        fillCharFrequencies(inputFiles);
-        if (charFrequencies.isEmpty()) {
-            System.out.println("error: empty File");
-            return 0;
-        }
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        this.parallelism = parallelism;
+    }
 
-        root = buildTree();
-        generateHuffmanCodes(root, "");
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
 
-        writeFiles(inputFiles, compressedFile, password);
-        return compressionRatio(inputFiles, compressedFile);
+    /**
+     * Runs extraction workers on virtual instead of platform threads.
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
     }
 
-    private int compressionRatio(List<File> inputFiles, File compressedFile) {
-        long totalOriginalSize = 0;
-        for (File f : inputFiles) {
-            totalOriginalSize += f.length();
-        }
+    public CompressionListener getListener() {
+        return listener;
+    }
 
-        long compressedSize = compressedFile.length();
+    /**
+     * Receives progress and timings of later {@code compress} and extraction calls.
+     */
+    public void setListener(CompressionListener listener) {
+        this.listener = listener == null ? CompressionListener.NONE : listener;
+    }
 
-        double compressionRatio = (double) compressedSize / totalOriginalSize * 100;
-        compressionRatio = Math.floor(compressionRatio);
+    public int getBlockSize() {
+        return blockSize;
+    }
 
-        return (int) compressionRatio;
+    public void setBlockSize(int blockSize) {
+        if (blockSize < ArchiveFormat.MIN_BLOCK_SIZE || blockSize > ArchiveFormat.MAX_BLOCK_SIZE)
+            throw new IllegalArgumentException("block size must be between " + ArchiveFormat.MIN_BLOCK_SIZE
+                    + " and " + ArchiveFormat.MAX_BLOCK_SIZE + " bytes");
+        this.blockSize = blockSize;
     }
 
-    private void fillCharFrequencies(List<File> inputFiles) throws IOException {
-        charFrequencies = new HashMap<>();
+    public int getLevel() {
+        return level;
+    }
 
-        for (File inputFile : inputFiles) {
-            BufferedInputStream bis = new BufferedInputStream(new FileInputStream(inputFile));
-            byte[] buffer = new byte[8192];
-            int bytesRead;
+    /**
+     * 0 codes every block with the archive's byte code only; 1 to {@link Lz77#MAX_LEVEL} also try
+     * LZ77, searching harder for matches at higher levels.
+     */
+    public void setLevel(int level) {
+        if (level < 0 || level > Lz77.MAX_LEVEL)
+            throw new IllegalArgumentException("level must be between 0 and " + Lz77.MAX_LEVEL);
+        this.level = level;
+    }
 
-            while ((bytesRead = bis.read(buffer)) != -1) {
-                for (int i = 0; i < bytesRead; i++) {
-                    byte b = buffer[i];
-                    charFrequencies.put(b, charFrequencies.getOrDefault(b, 0) + 1);
-                }
-            }
+    public int getWindowSize() {
+        return windowSize;
+    }
 
-            bis.close();
-        }
+    /**
+     * How far back LZ77 matches may reach, a power of two. Matches never cross block boundaries.
+     */
+    public void setWindowSize(int windowSize) {
+        if (windowSize < Lz77.MIN_WINDOW || windowSize > Lz77.MAX_WINDOW || Integer.bitCount(windowSize) != 1)
+            throw new IllegalArgumentException("window size must be a power of two between " + Lz77.MIN_WINDOW
+                    + " and " + Lz77.MAX_WINDOW + " bytes");
+        this.windowSize = windowSize;
     }
 
+    public TableScope getTableScope() {
+        return tableScope;
+    }
 
-    private Node buildTree() {
-        Queue<Node> queue = new PriorityQueue<>();
-        charFrequencies.forEach((b, f) -> queue.add(new Leaf(b, f)));
+    public void setTableScope(TableScope tableScope) {
+        this.tableScope = Objects.requireNonNull(tableScope);
+    }
 
-        if (queue.size() == 1) {
-            queue.add(new Leaf((byte) 0, 0));
-        }
-        while (queue.size() > 1) {
-            queue.add(new Node(queue.poll(), queue.poll()));
-        }
-        return queue.poll();
+    public boolean isInterleaved() {
+        return interleaved;
     }
 
-    private void generateHuffmanCodes(Node node, String code) {
-        if (node instanceof Leaf) {
-            if (code.isEmpty()) code = "0";
-            huffmanCodes.put(((Leaf) node).getCharacter(), code);
-            return;
-        }
+    /**
+     * Splits the bits of Huffman coded blocks of at least 16 KB into four interleaved streams,
+     * which decode about twice as fast on one thread for 12 bytes per block.
+     */
+    public void setInterleaved(boolean interleaved) {
+        this.interleaved = interleaved;
+    }
 
-        generateHuffmanCodes(node.getLeft(), code + "0");
-        generateHuffmanCodes(node.getRight(), code + "1");
+    public long getIndexInterval() {
+        return indexInterval;
     }
 
-    private void writeFiles(List<File> inputFiles, File destination, String password) throws IOException {
-        int nextStart = writeTree(inputFiles, destination, password);
+    /**
+     * Uncompressed bytes between the checkpoints each entry gets for range reads (see
+     * {@link ArchiveReader#read}); 0 writes no checkpoints. Checkpoints fall on block boundaries.
+     */
+    public void setIndexInterval(long indexInterval) {
+        if (indexInterval < 0)
+            throw new IllegalArgumentException("index interval must not be negative");
+        this.indexInterval = indexInterval;
+    }
 
-        for (File inputFile : inputFiles) {
-            nextStart = compressFile(inputFile, destination, nextStart);
-        }
+    public boolean isSolid() {
+        return solid;
     }
 
+    /**
+     * Packs files of up to 64 KB back to back into shared blocks instead of giving each its own
+     * local header, end marker and partly filled block. Small files are read ahead concurrently.
+     */
+    public void setSolid(boolean solid) {
+        this.solid = solid;
+    }
 
-    private int writeTree(List<File> inputFiles, File destination, String password) throws IOException {
-        int passwordLength = 0;
-        byte[] passwordBytes = new byte[0];
-        if (password != null) {
-            passwordLength = password.length();
-            passwordBytes = password.getBytes(StandardCharsets.UTF_8);
-        }
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
 
-        byte[] treeBytes = serializeTreeToBytes();
-        int treeSize = treeBytes.length;
+    /**
+     * Stores files with identical content once: every further copy is a directory record that
+     * points at the first copy's data. Candidates are found by size and content hash and compared
+     * byte for byte.
+     */
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
 
-        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(destination)));
+    public int getMaxCodeLength() {
+        return maxCodeLength;
+    }
 
-        dos.writeByte(passwordLength);                  // v=password length -- 1  Byte
-        if (passwordBytes.length > 0)
-            dos.write(passwordBytes);                   // password          -- v  Bytes
-        dos.writeInt(treeSize);                         // x= tree length    -- 4  Bytes
-        dos.write(treeBytes);                           // tree              -- x  Bytes
+    public void setMaxCodeLength(int maxCodeLength) {
+        if (maxCodeLength < CanonicalCode.MIN_CODE_LENGTH || maxCodeLength > CanonicalCode.MAX_CODE_LENGTH)
+            throw new IllegalArgumentException("max code length must be between " + CanonicalCode.MIN_CODE_LENGTH
+                    + " and " + CanonicalCode.MAX_CODE_LENGTH);
+        this.maxCodeLength = maxCodeLength;
+    }
 
-        dos.close();
 
-        return 1 + passwordLength + 4 + treeSize;
+    public int compress(List<File> inputFiles, File compressedFile, String password) throws IOException {
+        CompressionMetrics metrics = new CompressionMetrics(listener);
+        try {
+            long totalBytes = 0;
+            for (File f : inputFiles) {
+                if (!ArchiveFormat.isValidEntryName(f.getName()))
+                    throw new IllegalArgumentException(f + " cannot be archived under its name");
+                totalBytes += f.length();
+            }
+            metrics.setTotalBytes(totalBytes);
+
+            // with a password every table is stored in the sealed data of its block, as the
+            // archive and entry tables would give away each entry's byte counts
+            TableScope scope = password == null || password.isEmpty() ? tableScope : TableScope.BLOCK;
+            // per-block tables need no global counts
+            List<ByteHistogram> histograms = null;
+            if (scope != TableScope.BLOCK) {
+                metrics.phaseStarted(Phase.HISTOGRAM);
+                long start = System.nanoTime();
+                histograms = countEach(inputFiles);
+                metrics.addTime(Phase.HISTOGRAM, start);
+            }
+            int[] duplicateOf = new int[inputFiles.size()];
+            Arrays.fill(duplicateOf, -1);
+            if (deduplicate) {
+                long start = System.nanoTime();
+                duplicateOf = Deduplicator.find(inputFiles, histograms == null ? null
+                        : histograms.stream().mapToLong(ByteHistogram::contentHash).toArray());
+                metrics.addTime(Phase.HISTOGRAM, start);
+                long uniqueBytes = 0;
+                for (int i = 0; i < inputFiles.size(); i++) {
+                    if (duplicateOf[i] < 0) uniqueBytes += inputFiles.get(i).length();
+                }
+                metrics.setTotalBytes(uniqueBytes);
+            }
+            fillCharFrequencies(histograms, duplicateOf);
+
+            metrics.phaseStarted(Phase.TREE);
+            long start = System.nanoTime();
+            archiveCode = scope == TableScope.ARCHIVE || scope == TableScope.AUTO
+                    ? CodeTable.build(charFrequencies, maxCodeLength)
+                    : CodeTable.EMPTY;
+            metrics.addTime(Phase.TREE, start);
+
+            metrics.phaseStarted(Phase.ENCODE);
+            writeFiles(inputFiles, duplicateOf, compressedFile, password, scope, metrics);
+            return compressionRatio(inputFiles, compressedFile);
+        } finally {
+            metrics.finished();
+        }
     }
 
-    private int compressFile(File original, File destination, int fileStart) throws IOException {
+    /**
+     * Compresses {@code in} into a single-entry archive named {@code "data"}, see
+     * {@link #compress(InputStream, OutputStream, String, String)}.
+     */
+    public long compress(InputStream in, OutputStream out) throws IOException {
+        return compress(in, out, "data", null);
+    }
 
-        String fileName = original.getName();
-        byte[] fileNameBytes = fileName.getBytes(StandardCharsets.UTF_8);
-        int fileNameLength = fileNameBytes.length;
+    /**
+     * Compresses {@code in} into a single-entry archive written to {@code out} in one pass. Every
+     * input byte is read once and at most {@code 2 * parallelism + 1} blocks are held in memory:
+     * those being encoded or waiting to be written, and the one being read. With no counts over the
+     * whole input, each block is coded with its own table. Neither stream is closed.
+     *
+     * @return the number of bytes written to {@code out}
+     */
+    public long compress(InputStream in, OutputStream out, String entryName, String password) throws IOException {
+        if (!ArchiveFormat.isValidEntryName(entryName))
+            throw new IllegalArgumentException("entry name must be a plain file name: \"" + entryName + "\"");
+        CompressionMetrics metrics = new CompressionMetrics(listener);
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            archiveCode = CodeTable.EMPTY;
+            metrics.phaseStarted(Phase.ENCODE);
+            ChannelOutputStream channelOut = ChannelOutputStream.of(out);
+            DataOutputStream dos = new DataOutputStream(channelOut);
+            BlockCipher cipher = writeTree(dos, password);
+            CompressionPipeline.Input input = new CompressionPipeline.Input(entryName, () -> CodeTable.EMPTY,
+                    () -> block -> in.readNBytes(block, 0, block.length), null);
+            List<ArchiveEntry> entries = pipeline(pool, TableScope.BLOCK, false, cipher, metrics)
+                    .run(List.of(input), dos, channelOut);
+            long start = System.nanoTime();
+            CentralDirectory.write(dos, channelOut.position(), entries, cipher);
+            dos.flush();
+            metrics.addTime(Phase.WRITE, start);
+            return channelOut.position();
+        } finally {
+            pool.shutdown();
+            metrics.finished();
+        }
+    }
 
-        RandomAccessFile dos = new RandomAccessFile(destination, "rw");
+    private int compressionRatio(List<File> inputFiles, File compressedFile) {
+        long totalOriginalSize = 0;
+        for (File f : inputFiles) {
+            totalOriginalSize += f.length();
+        }
 
-        dos.seek(fileStart);
+        if (totalOriginalSize == 0) return 0;
 
-        dos.writeByte(fileNameLength);                  // y= name length    -- 1 Byte
-        dos.write(fileNameBytes);                       // name              -- y Bytes
-        dos.writeByte(0);                            // padBits           -- 1 Byte
-        dos.writeInt(0);                             //z= fileData           -- 4 Bytes
+        long compressedSize = compressedFile.length();
 
-        BufferedInputStream bis = new BufferedInputStream(new FileInputStream(original));
-        int currentByte = 0;
-        int bitCount = 0;
-        byte[] buffer = new byte[8192];
-        int bytesRead;
+        double compressionRatio = (double) compressedSize / totalOriginalSize * 100;
+        compressionRatio = Math.floor(compressionRatio);
 
-        int dataLength = 0;
+        return (int) compressionRatio;
+    }
 
-        while ((bytesRead = bis.read(buffer)) != -1) {
-            for (int i = 0; i < bytesRead; i++) {
-                byte b = buffer[i];
-                String code = huffmanCodes.get(b);
-                for (char bit : code.toCharArray()) {
-                    currentByte = (currentByte << 1) | (bit == '1' ? 1 : 0);
-                    bitCount++;
-                    if (bitCount == 8) {
-                        dos.write(currentByte);//compressed data     -- z Bytes
-                        currentByte = 0;
-                        bitCount = 0;
-                        dataLength++;
-                    }
-                }
+    private List<ByteHistogram> countEach(List<File> inputFiles) throws IOException {
+        if (parallelism == 1) {
+            List<ByteHistogram> histograms = new ArrayList<>();
+            for (File inputFile : inputFiles) {
+                histograms.add(ByteHistogram.countFile(inputFile));
             }
+            return histograms;
         }
-        int padBits = 0;
-
-        if (bitCount > 0) {
-            padBits = 8 - bitCount;
-            currentByte = currentByte << padBits;
-            dos.write(currentByte);
-            dataLength++;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return ByteHistogram.countEach(inputFiles, pool);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
         }
-
-        bis.close();
-
-        dos.seek(fileStart + 1 + fileNameLength);
-        dos.writeByte(padBits);
-        dos.writeInt(dataLength);
-        dos.close();
-
-
-        return fileStart + 1 + fileNameLength + 1 + 4 + dataLength;
     }
 
-
-    private void decodeTree(File encodedFile, String password) throws IOException {
-        DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(encodedFile)));
-
-        int passwordLength = dis.readByte();
-        if (passwordLength != 0) {
-            byte[] passwordBytes = new byte[passwordLength];
-            dis.read(passwordBytes);
-            if (!Objects.equals(password, new String(passwordBytes)))
-                return;
+    // duplicates are not encoded, so they do not count towards the archive's code
+    private void fillCharFrequencies(List<ByteHistogram> histograms, int[] duplicateOf) {
+        if (histograms == null) {
+            charFrequencies = new long[256];
+            entryFrequencies = null;
+            return;
         }
-        int treeSize = dis.readInt();
-        byte[] treeBytes = new byte[treeSize];
-        dis.readFully(treeBytes);
-        root = deserializeTreeFromBytes(treeBytes);
-
-        dis.close();
-    }
-
-    public Map<String, Integer> getAllCompressedFiles(File encodedFile) throws IOException {
-        Map<String, Integer> compressedFiles = new HashMap<>();
-        RandomAccessFile raf = new RandomAccessFile(encodedFile, "rw");
-
-
-        int fileStart = 0;
-        fileStart += raf.readByte() + 1;
-        raf.seek(fileStart);
-        fileStart += raf.readInt() + 4;
-        while (fileStart < encodedFile.length()) {
-            raf.seek(fileStart);
-            int nameLength = raf.readByte();
-            byte[] nameBytes = new byte[nameLength];
-            raf.read(nameBytes);
-            compressedFiles.put(new String(nameBytes), fileStart);
-            raf.readByte();
-            int dataLength = raf.readInt();
-            fileStart += 1 + nameLength + 1 + 4 + dataLength;
+        ByteHistogram total = new ByteHistogram();
+        entryFrequencies = new ArrayList<>();
+        for (int i = 0; i < histograms.size(); i++) {
+            ByteHistogram histogram = histograms.get(i);
+            if (duplicateOf[i] < 0) total.merge(histogram);
+            entryFrequencies.add(histogram.counts());
         }
-        return compressedFiles;
+        charFrequencies = total.counts();
     }
 
 
-    public boolean decodeAll(File encodedFile, String decodedOutputPath, String password) throws IOException {
+    /**
+     * Huffman code lengths for {@code frequencies}, limited to {@code maxCodeLength} bits.
+     * Symbols that never occur get length 0.
+     */
+    public static int[] buildCodeLengths(long[] frequencies, int maxCodeLength) {
+        int[] lengths = new int[frequencies.length];
+        CodeLengthBuilder.forCurrentThread().build(frequencies, maxCodeLength, lengths);
+        return lengths;
+    }
 
-        Map<String, Integer> compressedFiles = getAllCompressedFiles(encodedFile);
-        boolean result = true;
-        for (Map.Entry<String, Integer> entry : compressedFiles.entrySet()) {
-           result= decodeFile(encodedFile, entry.getValue(), decodedOutputPath, password);
+    private void writeFiles(List<File> inputFiles, int[] duplicateOf, File destination, String password,
+                            TableScope scope, CompressionMetrics metrics) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        ChannelOutputStream out = ChannelOutputStream.create(destination);
+        try (DataOutputStream dos = new DataOutputStream(out)) {
+            BlockCipher cipher = writeTree(dos, password);
+
+            List<CompressionPipeline.Input> inputs = new ArrayList<>();
+            for (int i = 0; i < inputFiles.size(); i++) {
+                if (duplicateOf[i] >= 0) continue;
+                File file = inputFiles.get(i);
+                long[] frequencies = entryFrequencies == null ? null : entryFrequencies.get(i);
+                inputs.add(new CompressionPipeline.Input(file.getName(), () -> entryCode(frequencies),
+                        () -> CompressionPipeline.open(file.toPath()), file.toPath()));
+            }
+            List<ArchiveEntry> written = pipeline(pool, scope, solid, cipher, metrics).run(inputs, dos, out);
+
+            // the pipeline returns the records of the written files in order; a duplicate takes
+            // the first copy's record under its own name and occupies no bytes
+            List<ArchiveEntry> entries = new ArrayList<>();
+            for (int i = 0, next = 0; i < inputFiles.size(); i++) {
+                if (duplicateOf[i] < 0) {
+                    entries.add(written.get(next++));
+                } else {
+                    ArchiveEntry first = entries.get(duplicateOf[i]);
+                    entries.add(new ArchiveEntry(inputFiles.get(i).getName(), first.offset(), 0, first.size(),
+                            first.checksum(), first.index(), first.solidOffset()));
+                }
+            }
+            long start = System.nanoTime();
+            CentralDirectory.write(dos, out.position(), entries, cipher);
+            metrics.addTime(Phase.WRITE, start);
+        } finally {
+            pool.shutdown();
         }
+    }
 
-        return result;
+    private CompressionPipeline pipeline(ExecutorService pool, TableScope scope, boolean solid, BlockCipher cipher,
+                                         CompressionMetrics metrics) {
+        return new CompressionPipeline(pool, (block, length, entryCode) -> encodeBlock(block, length, entryCode, scope, metrics),
+                blockSize, parallelism * 2 + 1, indexInterval, solid, cipher, metrics);
     }
 
-    public boolean decodeFile(File encodedFile, int fileStart, String decodedOutputPath, String password) throws IOException {
 
-        if (root == null)
-            decodeTree(encodedFile, password);
-        if (root == null) {
-            System.out.println("Password is wrong");
-            return false;
+    // returns the cipher for the blocks, or null without a password
+    private BlockCipher writeTree(DataOutputStream dos, String password) throws IOException {
+        BlockCipher cipher = password == null || password.isEmpty() ? null : BlockCipher.create(password);
+
+        dos.write(ArchiveFormat.MAGIC);                 // magic             -- 4  Bytes
+        dos.writeByte(ArchiveFormat.VERSION_2);         // version           -- 1  Byte
+        if (cipher == null) {
+            dos.writeByte(ArchiveFormat.ENCRYPTION_NONE); // encryption      -- 1  Byte
+        } else {
+            dos.writeByte(ArchiveFormat.ENCRYPTION_AES_GCM); // encryption   -- 1  Byte
+            cipher.writeHeader(dos);                    // key parameters    -- 36 Bytes
         }
+        CanonicalCode.writeLengths(dos, archiveCode.lengths()); // code lengths -- 2..512 Bytes
+        dos.writeInt(blockSize);                        // block size        -- 4  Bytes
+        return cipher;
+    }
 
-        Thread thread = new Thread(() -> {
-           String fileName;
+    // the entry's own table, or EMPTY if its blocks should not use one
+    private CodeTable entryCode(long[] frequencies) {
+        if (frequencies == null || (tableScope != TableScope.ENTRY && tableScope != TableScope.AUTO))
+            return CodeTable.EMPTY;
+        CodeTable code = CodeTable.build(frequencies, maxCodeLength);
+        if (tableScope == TableScope.AUTO
+                && code.cost(frequencies) + code.tableSize() * 8L >= archiveCode.cost(frequencies))
+            return CodeTable.EMPTY;
+        return code;
+    }
 
-            try {
-               fileName= decodeFile(encodedFile, fileStart, decodedOutputPath, this.root);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+    private EncodedBlock encodeBlock(byte[] block, int length, CodeTable entryCode, TableScope scope,
+                                     CompressionMetrics metrics) throws IOException {
+        long start = System.nanoTime();
+        try {
+            // the block histogram gives the exact coded size under each table, so the cheapest
+            // one is known before encoding and incompressible blocks skip the encode pass
+            ByteHistogram histogram = new ByteHistogram();
+            histogram.add(block, 0, length);
+            long[] counts = histogram.counts();
+
+            boolean split = interleaved && length >= ArchiveFormat.MIN_INTERLEAVED_LENGTH;
+            // stream sizes and the padding of three more streams
+            long extra = split ? 3 * 4 + 3 : 0;
+            int method = ArchiveFormat.METHOD_STORED;
+            CodeTable code = null;
+            long best = length;
+            if (scope == TableScope.ARCHIVE || scope == TableScope.AUTO) {
+                long bytes = bytes(archiveCode.cost(counts)) + extra;
+                if (bytes < best) {
+                    method = ArchiveFormat.METHOD_HUFFMAN;
+                    code = archiveCode;
+                    best = bytes;
+                }
+            }
+            if (!entryCode.isEmpty()) {
+                long bytes = bytes(entryCode.cost(counts)) + extra;
+                if (bytes < best) {
+                    method = ArchiveFormat.METHOD_HUFFMAN_ENTRY;
+                    code = entryCode;
+                    best = bytes;
+                }
+            }
+            // solid groups have no entry code and fall back to block codes
+            if (scope == TableScope.BLOCK || scope == TableScope.AUTO
+                    || (scope == TableScope.ENTRY && entryCode.isEmpty())) {
+                CodeTable blockCode = CodeTable.build(counts, maxCodeLength);
+                long bytes = bytes(blockCode.cost(counts)) + blockCode.tableSize() + extra;
+                if (bytes < best) {
+                    method = ArchiveFormat.METHOD_HUFFMAN_BLOCK;
+                    code = blockCode;
+                    best = bytes;
+                }
             }
 
-            JOptionPane.showMessageDialog(null, fileName+" decoded successfully!");
-
-        });
-        thread.start();
-        return true;
+            if (level > 0) {
+                EncodedBlock lz = Lz77.encode(block, length, level, windowSize, best);
+                if (lz != null) return lz;
+            }
+            if (method == ArchiveFormat.METHOD_STORED)
+                return EncodedBlock.stored(block, length);
+
+            ByteArrayOutputStream data = new ByteArrayOutputStream((int) best + 16);
+            if (method == ArchiveFormat.METHOD_HUFFMAN_BLOCK)
+                CanonicalCode.writeLengths(new DataOutputStream(data), code.lengths());
+            int[] codes = code.codes();
+            int[] lengths = code.lengths();
+            if (split) {
+                writeInterleaved(block, length, codes, lengths, new DataOutputStream(data));
+                return new EncodedBlock(length, method | ArchiveFormat.INTERLEAVED, data.toByteArray(), 0);
+            }
+            BitWriter writer = new BitWriter(data);
+            for (int i = 0; i < length; i++) {
+                int symbol = block[i] & 0xFF;
+                writer.write(codes[symbol], lengths[symbol]);
+            }
+            int padBits = writer.finish();
+            return new EncodedBlock(length, method, data.toByteArray(), padBits);
+        } finally {
+            metrics.addTime(Phase.ENCODE, start);
+        }
     }
 
-    private String decodeFile(File encodedFile, int fileStart, String decodedOutputPath, Node root) throws IOException {
-
-        RandomAccessFile dis = new RandomAccessFile(encodedFile, "rw");
-        dis.seek(fileStart);
-
-
-        int fileNameLength = dis.readByte();
-        byte[] fileNameBytes = new byte[fileNameLength];
-        dis.readFully(fileNameBytes);
-        String fileName = new String(fileNameBytes, StandardCharsets.UTF_8);
-
-        int padBits = dis.readByte();
-        int dataLength = dis.readInt();
-
-
-        File decodedFile = new File(decodedOutputPath + fileName);
-        BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(decodedFile));
-
-        Node current = root;
-        int nextByte;
-        long totalBits = dataLength * 8L - padBits;
-        long bitsRead = 0;
-
-        for (int k = 0; k < dataLength; k++) {
-            nextByte = dis.read();
-
-            for (int i = 7; i >= 0; i--) {
-                if (bitsRead >= totalBits) break;
-
-                int bit = (nextByte >> i) & 1;
-                current = (bit == 0) ? current.getLeft() : current.getRight();
-                bitsRead++;
-
-                if (current instanceof Leaf) {
-                    byte b = ((Leaf) current).getCharacter();
-                    bos.write(b);
-                    current = root;
-                }
+    // stream k codes the k-th quarter of the block, see DecodeTable.quarter
+    private static void writeInterleaved(byte[] block, int length, int[] codes, int[] lengths,
+                                         DataOutputStream data) throws IOException {
+        int quarter = DecodeTable.quarter(length);
+        ByteArrayOutputStream[] streams = new ByteArrayOutputStream[ArchiveFormat.STREAMS];
+        for (int k = 0; k < streams.length; k++) {
+            streams[k] = new ByteArrayOutputStream(quarter + 8);
+            BitWriter writer = new BitWriter(streams[k]);
+            for (int i = k * quarter, end = Math.min(i + quarter, length); i < end; i++) {
+                int symbol = block[i] & 0xFF;
+                writer.write(codes[symbol], lengths[symbol]);
             }
+            writer.finish();
         }
+        for (int k = 0; k < streams.length - 1; k++) data.writeInt(streams[k].size());
+        for (ByteArrayOutputStream stream : streams) stream.writeTo(data);
+    }
 
-        boolean last = (dis.read() == -1);
+    private static long bytes(long bits) {
+        return bits == Long.MAX_VALUE ? Long.MAX_VALUE : (bits + 7) / 8;
+    }
 
-        dis.close();
-        bos.close();
+    public Map<String, Long> getAllCompressedFiles(File encodedFile) throws IOException {
+        Map<String, Long> compressedFiles = new HashMap<>();
+        for (ArchiveEntry entry : listEntries(encodedFile)) {
+            compressedFiles.put(entry.name(), entry.offset());
+        }
+        return compressedFiles;
+    }
 
-        return fileName;
+    public List<ArchiveEntry> listEntries(File encodedFile) throws IOException {
+        return ArchiveReader.listEntries(encodedFile);
     }
 
-    private Node deserializeTreeFromBytes(byte[] treeBytes) throws IOException {
-        ByteArrayInputStream bais = new ByteArrayInputStream(treeBytes);
-        DataInputStream dis = new DataInputStream(bais);
-        return readTree(dis);
+    /**
+     * Opens the entry called {@code name} as a stream that decodes lazily, see
+     * {@link ArchiveReader#openEntry}. Closing the stream closes the archive. Every call opens the
+     * archive and derives the key of an encrypted one again; to open many entries, keep one
+     * {@link ArchiveReader} open instead.
+     */
+    public InputStream openEntry(File encodedFile, String name, String password) throws IOException {
+        ArchiveReader reader = ArchiveReader.open(encodedFile, password);
+        try {
+            return Channels.newInputStream(new EntryChannel(reader, reader.entry(name), reader));
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
     }
 
-    private Node readTree(DataInputStream dis) throws IOException {
-        boolean isLeaf = dis.readBoolean();
-        if (isLeaf) {
-            byte b = dis.readByte();
-            return new Leaf(b, 0);
-        } else {
-            Node left = readTree(dis);
-            Node right = readTree(dis);
-            return new Node(left, right);
+    /**
+     * Reads {@code length} bytes of entry {@code name} from uncompressed offset {@code offset}, see
+     * {@link ArchiveReader#read(ArchiveEntry, long, int)}. Every call opens the archive and derives
+     * the key of an encrypted one again; for many reads, keep one {@link ArchiveReader} open instead.
+     */
+    public byte[] read(File encodedFile, String name, long offset, int length, String password) throws IOException {
+        try (ArchiveReader reader = ArchiveReader.open(encodedFile, password)) {
+            return reader.read(name, offset, length);
         }
     }
 
-    private byte[] serializeTreeToBytes() throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        DataOutputStream dos = new DataOutputStream(baos);
-        encodeTree(root, dos);
-        dos.flush();
-        return baos.toByteArray();
+    /**
+     * Extracts {@code names} (every entry when null) on a pool of {@link #getParallelism()} workers.
+     */
+    public CompletableFuture<ExtractionResult> extract(File encodedFile, String decodedOutputPath, String password,
+                                                       Collection<String> names) {
+        return new ExtractionEngine(parallelism, virtualThreads, listener).extract(encodedFile, decodedOutputPath, password, names);
     }
 
-    private void encodeTree(Node node, DataOutputStream dos) throws IOException {
-        if (node instanceof Leaf) {
-            dos.writeBoolean(true);
-            dos.writeByte(((Leaf) node).getCharacter());
-        } else {
-            dos.writeBoolean(false);
-            encodeTree(node.getLeft(), dos);
-            encodeTree(node.getRight(), dos);
+    /**
+     * Decodes {@code names} (every entry when null) without writing them and checks their checksums,
+     * see {@link ExtractionEngine#verify}.
+     */
+    public CompletableFuture<ExtractionResult> verify(File encodedFile, String password, Collection<String> names) {
+        return new ExtractionEngine(parallelism, virtualThreads, listener).verify(encodedFile, password, names);
+    }
+
+    /**
+     * Extracts every entry and waits for it, see {@link #extract}.
+     *
+     * @return whether every entry was extracted
+     * @throws WrongPasswordException if the archive is protected by another password
+     */
+    public boolean decodeAll(File encodedFile, String decodedOutputPath, String password) throws IOException {
+        return Futures.await(extract(encodedFile, decodedOutputPath, password, null)).isSuccessful();
+    }
+
+    /**
+     * Extracts the entry whose local header starts at {@code fileStart}. A failure is thrown, so
+     * this returns true.
+     *
+     * @throws WrongPasswordException if the archive is protected by another password
+     */
+    public boolean decodeFile(File encodedFile, long fileStart, String decodedOutputPath, String password) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try (ArchiveReader reader = ArchiveReader.open(encodedFile, password)) {
+            CompressionMetrics metrics = new CompressionMetrics(listener);
+            try {
+                metrics.phaseStarted(Phase.DECODE);
+                reader.extract(fileStart, null, decodedOutputPath, pool, parallelism * 2, metrics);
+            } finally {
+                metrics.finished();
+            }
+            return true;
+        } finally {
+            pool.shutdown();
         }
     }
 
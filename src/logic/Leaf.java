@@ -3,7 +3,7 @@ package logic;
 public class Leaf extends Node {
     private final Byte character;
 
-    public Leaf(Byte character,int frequency) {
+    public Leaf(Byte character, long frequency) {
         super(frequency);
         this.character = character;
     }
@@ -0,0 +1,329 @@
+package logic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Deflate-style LZ77 stage for {@link ArchiveFormat#METHOD_LZ77} blocks. A hash-chain match
+ * finder turns a block into literals and (length, distance) matches, which are coded with two
+ * canonical Huffman tables stored in front of the bit stream:
+ * <pre>
+ * block data:  litLenLengths(284 symbols) distanceLengths(40 symbols) bits
+ * </pre>
+ * Literal/length symbols 0-255 are bytes and {@code 256 + c} starts a match with length code
+ * {@code c}. Length and distance codes are followed by extra bits as in Deflate, extended to
+ * distances of up to {@link #MAX_WINDOW}. Matches never reach outside their block, so blocks stay
+ * independent.
+ */
+public final class Lz77 {
+
+    public static final int MAX_LEVEL = 9;
+    public static final int MIN_WINDOW = 1 << 10;
+    public static final int MAX_WINDOW = 1 << 20;
+    public static final int DEFAULT_WINDOW = 1 << 16;
+
+    static final int MIN_MATCH = 4;
+    static final int MAX_MATCH = MIN_MATCH + 255;
+
+    static final int LENGTH_CODES = 28;
+    static final int LITLEN_SYMBOLS = 256 + LENGTH_CODES;
+    static final int DISTANCE_SYMBOLS = 40;
+    static final int MAX_CODE_LENGTH = 15;
+
+    private static final int[] LENGTH_BASE = new int[LENGTH_CODES];
+    private static final int[] LENGTH_EXTRA = new int[LENGTH_CODES];
+    private static final int[] DISTANCE_BASE = new int[DISTANCE_SYMBOLS];
+    private static final int[] DISTANCE_EXTRA = new int[DISTANCE_SYMBOLS];
+
+    static {
+        for (int c = 0; c < LENGTH_CODES; c++) {
+            if (c < 8) {
+                LENGTH_BASE[c] = c;
+            } else {
+                int n = (c - 8) / 4 + 3;
+                LENGTH_BASE[c] = (4 | ((c - 8) & 3)) << (n - 2);
+                LENGTH_EXTRA[c] = n - 2;
+            }
+        }
+        for (int c = 0; c < DISTANCE_SYMBOLS; c++) {
+            if (c < 4) {
+                DISTANCE_BASE[c] = c;
+            } else {
+                int n = c / 2;
+                DISTANCE_BASE[c] = (2 | (c & 1)) << (n - 1);
+                DISTANCE_EXTRA[c] = n - 1;
+            }
+        }
+    }
+
+    // per level: max chain length, nice length, lazy matching, longest match whose positions are hashed
+    private static final int[][] LEVELS = {
+            {0, 0, 0, 0},
+            {4, 16, 0, 8},
+            {8, 32, 0, 16},
+            {16, 64, 0, 32},
+            {16, 32, 1, MAX_MATCH},
+            {32, 64, 1, MAX_MATCH},
+            {64, 128, 1, MAX_MATCH},
+            {256, MAX_MATCH, 1, MAX_MATCH},
+            {1024, MAX_MATCH, 1, MAX_MATCH},
+            {4096, MAX_MATCH, 1, MAX_MATCH},
+    };
+
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    // a match token has the sign bit set: (length - MIN_MATCH) << 20 | (distance - 1)
+    private static final int MATCH = 1 << 31;
+
+    private final byte[] block;
+    private final int length;
+    private final int window;
+    private final int maxChain;
+    private final int niceLength;
+    private final int hashShift;
+    private final int[] head;
+    private final int[] prev;
+    private int matchDistance;
+
+    private final int[] tokens;
+    private int tokenCount;
+    private final long[] litLenFrequencies = new long[LITLEN_SYMBOLS];
+    private final long[] distanceFrequencies = new long[DISTANCE_SYMBOLS];
+
+    private Lz77(byte[] block, int length, int level, int window) {
+        this.block = block;
+        this.length = length;
+        this.window = Integer.highestOneBit(window);
+        this.maxChain = LEVELS[level][0];
+        this.niceLength = LEVELS[level][1];
+        int hashBits = Math.max(10, Math.min(16, 32 - Integer.numberOfLeadingZeros(length)));
+        this.hashShift = 32 - hashBits;
+        // positions are stored plus one, so 0 means empty
+        this.head = new int[1 << hashBits];
+        this.prev = new int[Math.min(this.window, Integer.highestOneBit(Math.max(length, 1)) * 2)];
+        this.tokens = new int[length];
+    }
+
+    /**
+     * Compresses {@code block[0, length)} at {@code level} (1 to {@link #MAX_LEVEL}).
+     *
+     * @return the block, or null if it would not be smaller than {@code limit} bytes
+     */
+    static EncodedBlock encode(byte[] block, int length, int level, int window, long limit) throws IOException {
+        Lz77 lz = new Lz77(block, length, level, window);
+        if (LEVELS[level][2] != 0)
+            lz.parseLazy();
+        else
+            lz.parseGreedy(LEVELS[level][3]);
+        return lz.write(limit);
+    }
+
+    private void parseGreedy(int insertLimit) {
+        int end = length - MIN_MATCH;
+        int i = 0;
+        while (i <= end) {
+            int matchLength = longestMatch(i, insert(i), MIN_MATCH - 1);
+            if (matchLength >= MIN_MATCH) {
+                match(matchLength, matchDistance);
+                int stop = i + matchLength;
+                if (matchLength <= insertLimit) {
+                    for (int j = i + 1; j < stop && j <= end; j++) insert(j);
+                }
+                i = stop;
+            } else {
+                literal(block[i]);
+                i++;
+            }
+        }
+        while (i < length) literal(block[i++]);
+    }
+
+    // a match is only taken if the next position does not start a longer one
+    private void parseLazy() {
+        int end = length - MIN_MATCH;
+        int prevLength = 0;
+        int prevDistance = 0;
+        boolean pendingLiteral = false;
+        for (int i = 0; i < length; i++) {
+            int matchLength = 0;
+            int distance = 0;
+            if (i <= end) {
+                int candidate = insert(i);
+                if (prevLength < niceLength) {
+                    matchLength = longestMatch(i, candidate, Math.max(prevLength, MIN_MATCH - 1));
+                    distance = matchDistance;
+                }
+            }
+            if (prevLength >= MIN_MATCH && matchLength <= prevLength) {
+                match(prevLength, prevDistance);
+                int stop = i - 1 + prevLength;
+                for (int j = i + 1; j < stop && j <= end; j++) insert(j);
+                i = stop - 1;
+                prevLength = 0;
+                pendingLiteral = false;
+            } else {
+                if (pendingLiteral) literal(block[i - 1]);
+                pendingLiteral = true;
+                prevLength = matchLength;
+                prevDistance = distance;
+            }
+        }
+        if (pendingLiteral) literal(block[length - 1]);
+    }
+
+    // adds position i to its hash chain and returns the previous head, or -1
+    private int insert(int i) {
+        int h = ((int) INT.get(block, i) * 0x9E3779B1) >>> hashShift;
+        int candidate = head[h] - 1;
+        head[h] = i + 1;
+        prev[i & (prev.length - 1)] = candidate + 1;
+        return candidate;
+    }
+
+    // longest match longer than best, with its distance in matchDistance; returns best if none
+    private int longestMatch(int i, int candidate, int best) {
+        int limit = Math.min(MAX_MATCH, length - i);
+        if (best >= limit) return best;
+        int chain = maxChain;
+        int maxDistance = Math.min(window, prev.length) - 1;
+        while (candidate >= 0 && i - candidate <= maxDistance) {
+            if (block[candidate + best] == block[i + best]) {
+                int matchLength = matchLength(candidate, i, limit);
+                if (matchLength > best) {
+                    best = matchLength;
+                    matchDistance = i - candidate;
+                    if (matchLength >= niceLength || matchLength == limit) break;
+                }
+            }
+            if (--chain == 0) break;
+            candidate = prev[candidate & (prev.length - 1)] - 1;
+        }
+        return best;
+    }
+
+    private int matchLength(int a, int b, int limit) {
+        int n = 0;
+        while (n + 8 <= limit) {
+            long diff = (long) LONG.get(block, a + n) ^ (long) LONG.get(block, b + n);
+            if (diff != 0) return n + (Long.numberOfTrailingZeros(diff) >>> 3);
+            n += 8;
+        }
+        while (n < limit && block[a + n] == block[b + n]) n++;
+        return n;
+    }
+
+    private void literal(byte b) {
+        tokens[tokenCount++] = b & 0xFF;
+        litLenFrequencies[b & 0xFF]++;
+    }
+
+    private void match(int matchLength, int distance) {
+        tokens[tokenCount++] = MATCH | ((matchLength - MIN_MATCH) << 20) | (distance - 1);
+        litLenFrequencies[256 + lengthCode(matchLength - MIN_MATCH)]++;
+        distanceFrequencies[distanceCode(distance - 1)]++;
+    }
+
+    private static int lengthCode(int v) {
+        if (v < 8) return v;
+        int n = 31 - Integer.numberOfLeadingZeros(v);
+        return 8 + (n - 3) * 4 + ((v >>> (n - 2)) & 3);
+    }
+
+    private static int distanceCode(int v) {
+        if (v < 4) return v;
+        int n = 31 - Integer.numberOfLeadingZeros(v);
+        return 2 * n + ((v >>> (n - 1)) & 1);
+    }
+
+    private EncodedBlock write(long limit) throws IOException {
+        int[] litLenLengths = Huffman.buildCodeLengths(litLenFrequencies, MAX_CODE_LENGTH);
+        int[] distanceLengths = Huffman.buildCodeLengths(distanceFrequencies, MAX_CODE_LENGTH);
+
+        long bits = 0;
+        for (int s = 0; s < LITLEN_SYMBOLS; s++) {
+            bits += litLenFrequencies[s] * (litLenLengths[s] + (s < 256 ? 0 : LENGTH_EXTRA[s - 256]));
+        }
+        for (int s = 0; s < DISTANCE_SYMBOLS; s++) {
+            bits += distanceFrequencies[s] * (distanceLengths[s] + DISTANCE_EXTRA[s]);
+        }
+        ByteArrayOutputStream data = new ByteArrayOutputStream((int) Math.min((bits + 7) / 8 + 256, limit));
+        DataOutputStream tables = new DataOutputStream(data);
+        CanonicalCode.writeLengths(tables, litLenLengths);
+        CanonicalCode.writeLengths(tables, distanceLengths);
+        if ((bits + 7) / 8 + data.size() >= limit) return null;
+
+        int[] litLenCodes = CanonicalCode.codes(litLenLengths);
+        int[] distanceCodes = CanonicalCode.codes(distanceLengths);
+        BitWriter writer = new BitWriter(data);
+        for (int t = 0; t < tokenCount; t++) {
+            int token = tokens[t];
+            if (token >= 0) {
+                writer.write(litLenCodes[token], litLenLengths[token]);
+                continue;
+            }
+            int v = (token >>> 20) & 0xFF;
+            int c = lengthCode(v);
+            int extra = LENGTH_EXTRA[c];
+            int symbol = 256 + c;
+            writer.write((litLenCodes[symbol] << extra) | (v - LENGTH_BASE[c]), litLenLengths[symbol] + extra);
+
+            int d = token & 0xFFFFF;
+            c = distanceCode(d);
+            writer.write(distanceCodes[c], distanceLengths[c]);
+            writer.write(d - DISTANCE_BASE[c], DISTANCE_EXTRA[c]);
+        }
+        int padBits = writer.finish();
+        return new EncodedBlock(length, ArchiveFormat.METHOD_LZ77, data.toByteArray(), padBits);
+    }
+
+    /**
+     * Decodes a block written by {@link #encode} into {@code rawLength} bytes.
+     */
+    static byte[] decode(ByteBuffer data, int padBits, int rawLength) throws IOException {
+        ByteBuffer in = data.duplicate();
+        int[] litLenLengths = CanonicalCode.readLengths(in, LITLEN_SYMBOLS);
+        int[] distanceLengths = CanonicalCode.readLengths(in, DISTANCE_SYMBOLS);
+        long totalBits = in.remaining() * 8L - padBits;
+
+        DecodeTable litLen = DecodeTable.fromCodeLengthsOrNull(litLenLengths);
+        DecodeTable distances = DecodeTable.fromCodeLengthsOrNull(distanceLengths);
+        if (litLen == null)
+            throw new IOException("corrupted block: empty literal table");
+
+        BitReader reader = new BitReader(in);
+        byte[] out = new byte[rawLength];
+        int pos = 0;
+        while (pos < rawLength) {
+            int symbol = litLen.decodeSymbol(reader);
+            if (symbol < 256) {
+                out[pos++] = (byte) symbol;
+                continue;
+            }
+            if (distances == null)
+                throw new IOException("corrupted block: match without distance table");
+            int c = symbol - 256;
+            int matchLength = MIN_MATCH + LENGTH_BASE[c] + reader.read(LENGTH_EXTRA[c]);
+            c = distances.decodeSymbol(reader);
+            int distance = 1 + DISTANCE_BASE[c] + reader.read(DISTANCE_EXTRA[c]);
+            if (distance > pos || matchLength > rawLength - pos)
+                throw new IOException("corrupted block: match outside the block");
+
+            if (distance >= matchLength) {
+                System.arraycopy(out, pos - distance, out, pos, matchLength);
+            } else {
+                // overlapping copy repeats the last distance bytes
+                for (int k = 0; k < matchLength; k++) out[pos + k] = out[pos - distance + k];
+            }
+            pos += matchLength;
+        }
+        if (reader.position() > totalBits)
+            throw new IOException("corrupted block: bit stream too short");
+        return out;
+    }
+}
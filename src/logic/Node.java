@@ -2,7 +2,7 @@ package logic;
 
 public class Node implements Comparable<Node> {
 
-    private final int frequency;
+    private final long frequency;
     private Node left;
     private Node right;
 
@@ -12,11 +12,11 @@ public class Node implements Comparable<Node> {
         this.right = right;
     }
 
-    public Node(int frequency) {
+    public Node(long frequency) {
         this.frequency = frequency;
     }
 
-    public int getFrequency() {
+    public long getFrequency() {
         return frequency;
     }
 
@@ -30,7 +30,7 @@ public class Node implements Comparable<Node> {
 
     @Override
     public int compareTo(Node node) {
-        return Integer.compare(frequency, node.getFrequency());
+        return Long.compare(frequency, node.getFrequency());
     }
 
 //    @Override
@@ -0,0 +1,14 @@
+package logic;
+
+/**
+ * Stages of compression and extraction that {@link CompressionMetrics} times separately.
+ */
+public enum Phase {
+    HISTOGRAM,
+    TREE,
+    READ,
+    ENCODE,
+    WRITE,
+    DECODE,
+    CIPHER
+}
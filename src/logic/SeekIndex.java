@@ -0,0 +1,62 @@
+package logic;
+
+import java.util.Arrays;
+
+/**
+ * Checkpoints inside one entry: checkpoint i says that the block whose header starts at archive
+ * position {@code blockOffsets[i]} holds the entry's bytes from {@code rawOffsets[i]} on. Blocks
+ * decode independently, so a range read starts at the last checkpoint before the range and only
+ * walks block headers from there. The start of the entry is an implicit checkpoint.
+ */
+public record SeekIndex(long[] rawOffsets, long[] blockOffsets) {
+
+    public static final SeekIndex NONE = new SeekIndex(new long[0], new long[0]);
+
+    public int size() {
+        return rawOffsets.length;
+    }
+
+    /**
+     * @return the last checkpoint at or before {@code offset}, or -1 if there is none
+     */
+    int floor(long offset) {
+        int i = Arrays.binarySearch(rawOffsets, offset);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /**
+     * Adds a checkpoint at the first block that starts {@code interval} or more bytes after the
+     * previous one; an interval of 0 adds none.
+     */
+    static final class Builder {
+        private final long interval;
+        private long[] rawOffsets = new long[8];
+        private long[] blockOffsets = new long[8];
+        private int size;
+        private long raw;
+        private long last;
+
+        Builder(long interval) {
+            this.interval = interval;
+        }
+
+        // called for every block of the entry, in order, before it is written at blockOffset
+        void block(long blockOffset, int rawLength) {
+            if (interval > 0 && raw - last >= interval) {
+                if (size == rawOffsets.length) {
+                    rawOffsets = Arrays.copyOf(rawOffsets, size * 2);
+                    blockOffsets = Arrays.copyOf(blockOffsets, size * 2);
+                }
+                rawOffsets[size] = raw;
+                blockOffsets[size] = blockOffset;
+                size++;
+                last = raw;
+            }
+            raw += rawLength;
+        }
+
+        SeekIndex build() {
+            return size == 0 ? NONE : new SeekIndex(Arrays.copyOf(rawOffsets, size), Arrays.copyOf(blockOffsets, size));
+        }
+    }
+}
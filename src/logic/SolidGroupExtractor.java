@@ -0,0 +1,171 @@
+package logic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+
+/**
+ * Extracts entries of one solid group in a single pass over its blocks. Blocks that hold part of
+ * a selected entry are decoded on a pool, at most {@code window} at a time, and cut into the
+ * entries' files in order; the other blocks are skipped by their headers. Without an output path
+ * the entries are only checked.
+ */
+final class SolidGroupExtractor {
+
+    private final ArchiveReader reader;
+    private final String decodedOutputPath;
+    private final CompressionMetrics metrics;
+    private final List<ArchiveEntry> members;
+    private final Map<String, Exception> failures = new HashMap<>();
+
+    // the first entry not yet written completely, whether it was started, and its open file
+    private int current;
+    private boolean started;
+    private FileChannel out;
+    private final CRC32C checksum = new CRC32C();
+
+    private SolidGroupExtractor(ArchiveReader reader, List<ArchiveEntry> members, String decodedOutputPath,
+                                CompressionMetrics metrics) {
+        this.reader = reader;
+        this.decodedOutputPath = decodedOutputPath;
+        this.metrics = metrics;
+        this.members = new ArrayList<>(members);
+        this.members.sort(Comparator.comparingLong(ArchiveEntry::solidOffset));
+    }
+
+    /**
+     * Extracts {@code members}, entries of the group whose local header starts at
+     * {@code groupStart}, to {@code decodedOutputPath + name}, or only checks them when
+     * {@code decodedOutputPath} is null.
+     *
+     * @return the failures by entry name; entries without one were extracted and checked
+     */
+    static Map<String, Exception> extract(ArchiveReader reader, long groupStart, List<ArchiveEntry> members,
+                                          String decodedOutputPath, ExecutorService pool, int window,
+                                          CompressionMetrics metrics) {
+        SolidGroupExtractor extractor = new SolidGroupExtractor(reader, members, decodedOutputPath, metrics);
+        try {
+            extractor.run(groupStart, pool, window);
+        } catch (IOException | RuntimeException e) {
+            extractor.failRemaining(e);
+        }
+        return extractor.failures;
+    }
+
+    private void run(long groupStart, ExecutorService pool, int window) throws IOException {
+        Deque<Future<ByteBuffer>> pending = new ArrayDeque<>();
+        Deque<Long> starts = new ArrayDeque<>();
+        try {
+            ArchiveReader.LocalHeader header = reader.localHeader(groupStart);
+            long raw = 0;
+            int next = 0;
+            ArchiveReader.Block block;
+            for (long blockStart = header.firstBlock(); next < members.size() && (block = reader.block(blockStart)) != null;
+                 blockStart = block.next()) {
+                long end = raw + block.rawLength();
+                while (next < members.size() && endOf(members.get(next)) <= raw)
+                    next++;
+                if (next < members.size() && members.get(next).solidOffset() < end) {
+                    ArchiveReader.Block selected = block;
+                    long rawOffset = raw;
+                    pending.add(pool.submit(() -> reader.decodeBlock(selected, header, rawOffset, metrics)));
+                    starts.add(raw);
+                    if (pending.size() >= window)
+                        write(Futures.await(pending.poll()), starts.poll());
+                }
+                raw = end;
+            }
+            while (!pending.isEmpty()) {
+                write(Futures.await(pending.poll()), starts.poll());
+            }
+            // empty entries after the last decoded block
+            while (current < members.size() && members.get(current).size() == 0) {
+                finish(members.get(current));
+            }
+            if (current < members.size())
+                failRemaining(new IOException("solid group at " + groupStart + " ends early"));
+        } finally {
+            pending.forEach(f -> f.cancel(true));
+            closeCurrent();
+        }
+    }
+
+    // hands the bytes of the block that starts at group offset raw to the entries they belong to
+    private void write(ByteBuffer block, long raw) {
+        long end = raw + block.remaining();
+        while (current < members.size()) {
+            ArchiveEntry entry = members.get(current);
+            if (entry.solidOffset() > end || (entry.solidOffset() == end && entry.size() > 0)) return;
+            long from = Math.max(entry.solidOffset(), raw);
+            long to = Math.min(endOf(entry), end);
+            if (from <= to) {
+                try {
+                    if (!started) open(entry);
+                    ByteBuffer part = block.slice((int) (from - raw), (int) (to - from));
+                    checksum.update(part.duplicate());
+                    while (out != null && part.hasRemaining()) out.write(part);
+                } catch (IOException e) {
+                    failures.put(entry.name(), e);
+                    closeCurrent();
+                    current++;
+                    continue;
+                }
+            }
+            if (endOf(entry) > end) return;
+            finish(entry);
+        }
+    }
+
+    private void open(ArchiveEntry entry) throws IOException {
+        metrics.entryStarted(entry.name());
+        checksum.reset();
+        started = true;
+        if (decodedOutputPath != null) out = FileChannel.open(ArchiveFormat.outputPath(decodedOutputPath, entry.name()), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private void finish(ArchiveEntry entry) {
+        try {
+            if (!started) open(entry);
+            if (out != null) out.close();
+            if (reader.hasEntryChecksums() && (int) checksum.getValue() != entry.checksum())
+                failures.put(entry.name(), new IOException(entry.name() + ": checksum mismatch"));
+        } catch (IOException e) {
+            failures.put(entry.name(), e);
+        }
+        out = null;
+        started = false;
+        current++;
+    }
+
+    private void failRemaining(Exception e) {
+        for (; current < members.size(); current++) {
+            failures.putIfAbsent(members.get(current).name(), e);
+        }
+    }
+
+    private void closeCurrent() {
+        started = false;
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+        out = null;
+    }
+
+    private static long endOf(ArchiveEntry entry) {
+        return entry.solidOffset() + entry.size();
+    }
+}
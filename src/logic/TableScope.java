@@ -0,0 +1,17 @@
+package logic;
+
+/**
+ * Which Huffman tables the compressor may code a block with. Whatever the scope, a block can
+ * still be LZ77 coded or stored when that is smaller. Archives with a password always use
+ * {@link #BLOCK}, so that every table is encrypted with its block.
+ */
+public enum TableScope {
+    /** One table for the whole archive, built from all inputs and stored in the header. */
+    ARCHIVE,
+    /** One table per entry, stored in front of its blocks. */
+    ENTRY,
+    /** A table per block, stored in the block. Skips the histogram pass over all inputs. */
+    BLOCK,
+    /** Per block, whichever of the archive, entry and block tables gives the smallest output. */
+    AUTO
+}
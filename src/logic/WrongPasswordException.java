@@ -0,0 +1,12 @@
+package logic;
+
+import java.io.IOException;
+
+public class WrongPasswordException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public WrongPasswordException() {
+        super("Password is wrong");
+    }
+}